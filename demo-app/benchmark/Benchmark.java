@@ -0,0 +1,309 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * End-to-end overhead benchmark of the agent using the demo application.
+ * Run from the {@code demo-app} directory after building the agent and the demo:
+ * <pre>java benchmark/Benchmark.java [options]</pre>
+ * Options:
+ * <ul>
+ * <li>{@code --app file} the demo application jar (default {@code target/demo-0.0.1-SNAPSHOT.jar})</li>
+ * <li>{@code --agent file} the agent jar (default {@code ../target/usage-inspector-0.1.0-SNAPSHOT.jar})</li>
+ * <li>{@code --out file} the result file (default {@code benchmark-results.json})</li>
+ * <li>{@code --baseline file} a result file of an earlier run to compare with</li>
+ * <li>{@code --runs n} the number of runs per configuration (default {@code 3})</li>
+ * <li>{@code --warmup s} the warmup load in seconds, not measured (default {@code 10})</li>
+ * <li>{@code --duration s} the measured load in seconds (default {@code 20})</li>
+ * <li>{@code --threads n} the number of concurrent clients (default {@code 8})</li>
+ * <li>{@code --config name=agentArgs} a configuration to run, may be repeated; replaces the
+ * default configurations. Use {@code none} as agent arguments to run without agent.</li>
+ * </ul>
+ * For each run the application is started on a free port; the startup time is measured until
+ * the first request succeeds, followed by the load, the memory use after a GC and the shutdown
+ * time (which includes writing the report). The medians of the runs are compared to the baseline.
+ */
+public class Benchmark {
+
+	private static final String NO_AGENT = "none";
+	private static final Pattern SUMMARY = Pattern.compile("^\\s*\"([^\"]+)\": (-?[0-9.]+),?$");
+	private static final Pattern NUMBER = Pattern.compile("\"(\\w+)\":(-?[0-9]+)");
+
+	private final Map<String, String> options = new LinkedHashMap<>();
+	private final Map<String, String> configurations = new LinkedHashMap<>();
+	private final HttpClient client = HttpClient.newBuilder()
+		.version(HttpClient.Version.HTTP_1_1)
+		.connectTimeout(Duration.ofSeconds(5))
+		.build();
+
+	public static void main(final String[] args) throws Exception {
+		new Benchmark(args).run();
+	}
+
+	Benchmark(final String[] args) {
+		options.put("app", "target/demo-0.0.1-SNAPSHOT.jar");
+		options.put("agent", "../target/usage-inspector-0.1.0-SNAPSHOT.jar");
+		options.put("out", "benchmark-results.json");
+		options.put("runs", "3");
+		options.put("warmup", "10");
+		options.put("duration", "20");
+		options.put("threads", "8");
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String name = args[i].replaceFirst("^--", "");
+			if ("config".equals(name)) {
+				final int split = args[i + 1].indexOf('=');
+				configurations.put(args[i + 1].substring(0, split), args[i + 1].substring(split + 1));
+			} else {
+				options.put(name, args[i + 1]);
+			}
+		}
+		if (configurations.isEmpty()) {
+			configurations.put("no-agent", NO_AGENT);
+			configurations.put("details-false", "details=false");
+			configurations.put("details-true", "details=true");
+			configurations.put("tiered", "details=true:tiered=true");
+			configurations.put("governor", "details=true:maxCallRate=100000");
+		}
+	}
+
+	void run() throws Exception {
+		final Path reports = Files.createTempDirectory("usage-inspector-benchmark");
+		final Map<String, List<Map<String, Double>>> results = new LinkedHashMap<>();
+		final int runs = Integer.parseInt(options.get("runs"));
+		// the runs of the configurations are interleaved to spread out effects of the machine state
+		for (int run = 0; run < runs; run++) {
+			for (final Map.Entry<String, String> configuration : configurations.entrySet()) {
+				System.err.printf("run %d of %s%n", Integer.valueOf(run + 1), configuration.getKey());
+				final Map<String, Double> result = measure(configuration.getValue(), reports.resolve(configuration.getKey() + ".json"));
+				results.computeIfAbsent(configuration.getKey(), key -> new ArrayList<>()).add(result);
+				System.err.println("  " + result);
+			}
+		}
+		final Map<String, Double> summary = new LinkedHashMap<>();
+		results.forEach((name, list) -> list.get(0).keySet().forEach(metric -> summary.put(
+			name + "." + metric,
+			Double.valueOf(median(list.stream().mapToDouble(result -> result.get(metric).doubleValue()).toArray())))));
+		write(new File(options.get("out")), results, summary);
+		if (options.containsKey("baseline")) {
+			compare(read(new File(options.get("baseline"))), summary, System.out);
+		} else {
+			summary.forEach((key, value) -> System.out.printf("%-40s %14.2f%n", key, value));
+		}
+	}
+
+	Map<String, Double> measure(final String agentArgs, final Path report) throws Exception {
+		final int port;
+		try (final ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		final List<String> command = new ArrayList<>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		if (!NO_AGENT.equals(agentArgs)) {
+			command.add("-javaagent:%s=%s:out=%s:reportIssues=false".formatted(options.get("agent"), agentArgs, report));
+		}
+		command.addAll(List.of("-jar", options.get("app"), "--server.port=" + port));
+		final long start = System.nanoTime();
+		final Process process = new ProcessBuilder(command)
+			.redirectErrorStream(true)
+			.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+			.start();
+		final Map<String, Double> result = new LinkedHashMap<>();
+		try {
+			final URI work = URI.create("http://localhost:%d/work".formatted(Integer.valueOf(port)));
+			awaitReady(work, process);
+			result.put("startupMs", Double.valueOf((System.nanoTime() - start) / 1e6));
+			load(work, Integer.parseInt(options.get("warmup")));
+			result.putAll(load(work, Integer.parseInt(options.get("duration"))));
+			final String memory = client.send(
+				HttpRequest.newBuilder(URI.create("http://localhost:%d/memory".formatted(Integer.valueOf(port)))).build(),
+				HttpResponse.BodyHandlers.ofString()).body();
+			final Matcher matcher = NUMBER.matcher(memory);
+			while (matcher.find()) {
+				result.put(matcher.group(1) + "MB", Double.valueOf(Long.parseLong(matcher.group(2)) / (1024.0 * 1024.0)));
+			}
+		} finally {
+			final long stop = System.nanoTime();
+			process.destroy();
+			if (!process.waitFor(120, TimeUnit.SECONDS)) {
+				process.destroyForcibly();
+			}
+			result.put("shutdownMs", Double.valueOf((System.nanoTime() - stop) / 1e6));
+		}
+		return result;
+	}
+
+	void awaitReady(final URI uri, final Process process) throws Exception {
+		final long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+		while (System.nanoTime() < deadline) {
+			if (!process.isAlive()) {
+				throw new IllegalStateException("application terminated with exit code " + process.exitValue());
+			}
+			try {
+				if (client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+					return;
+				}
+			} catch (IOException e) {
+				// not ready yet
+			}
+			Thread.sleep(10);
+		}
+		throw new IllegalStateException("application not ready in time");
+	}
+
+	Map<String, Double> load(final URI uri, final int seconds) throws InterruptedException {
+		final int threads = Integer.parseInt(options.get("threads"));
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		final long[][] latencies = new long[threads][];
+		final int[] counts = new int[threads];
+		final int[] errors = new int[threads];
+		final List<Thread> clients = new ArrayList<>();
+		final long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			final int index = t;
+			final Thread thread = new Thread(() -> {
+				final HttpRequest request = HttpRequest.newBuilder(uri).build();
+				long[] values = new long[1024];
+				int count = 0;
+				while (System.nanoTime() < deadline) {
+					final long begin = System.nanoTime();
+					try {
+						if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+							errors[index]++;
+							continue;
+						}
+					} catch (IOException e) {
+						errors[index]++;
+						continue;
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+					// only successful responses are latency samples
+					if (count == values.length) {
+						values = Arrays.copyOf(values, 2 * count);
+					}
+					values[count++] = System.nanoTime() - begin;
+				}
+				latencies[index] = values;
+				counts[index] = count;
+			});
+			clients.add(thread);
+			thread.start();
+		}
+		for (final Thread thread : clients) {
+			thread.join();
+		}
+		final double elapsed = (System.nanoTime() - start) / 1e9;
+		final int total = Arrays.stream(counts).sum();
+		final long[] all = new long[total];
+		int offset = 0;
+		for (int t = 0; t < threads; t++) {
+			System.arraycopy(latencies[t], 0, all, offset, counts[t]);
+			offset += counts[t];
+		}
+		Arrays.sort(all);
+		final Map<String, Double> result = new LinkedHashMap<>();
+		result.put("requestsPerSecond", Double.valueOf(total / elapsed));
+		result.put("errors", Double.valueOf(Arrays.stream(errors).sum()));
+		result.put("p50Ms", Double.valueOf(percentile(all, 0.5)));
+		result.put("p90Ms", Double.valueOf(percentile(all, 0.9)));
+		result.put("p99Ms", Double.valueOf(percentile(all, 0.99)));
+		result.put("p999Ms", Double.valueOf(percentile(all, 0.999)));
+		result.put("maxMs", Double.valueOf(total > 0 ? all[total - 1] / 1e6 : 0));
+		return result;
+	}
+
+	static double percentile(final long[] sorted, final double p) {
+		return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e6;
+	}
+
+	static double median(final double[] values) {
+		Arrays.sort(values);
+		final int middle = values.length / 2;
+		return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+	}
+
+	void write(final File file, final Map<String, List<Map<String, Double>>> results, final Map<String, Double> summary) throws IOException {
+		try (final PrintStream out = new PrintStream(file, "UTF-8")) {
+			out.println("{");
+			out.printf("  \"timestamp\": \"%s\",%n", Instant.now());
+			out.printf("  \"java\": \"%s\",%n", System.getProperty("java.version"));
+			out.printf("  \"agent\": \"%s\",%n", new File(options.get("agent")).getName());
+			out.printf("  \"options\": { %s },%n", String.join(", ", options
+				.entrySet()
+				.stream()
+				.map(entry -> "\"%s\": \"%s\"".formatted(entry.getKey(), entry.getValue()))
+				.toList()));
+			out.println("  \"configurations\": {");
+			final List<String> entries = new ArrayList<>();
+			configurations.forEach((name, args) -> entries.add("    \"%s\": { \"agentArgs\": \"%s\", \"runs\": [ %s ] }".formatted(
+				name,
+				args,
+				String.join(", ", results.get(name).stream().map(Benchmark::json).toList()))));
+			out.println(String.join(",\n", entries));
+			out.println("  },");
+			// one entry per line, so that the summary can be read back as baseline
+			out.println("  \"summary\": {");
+			final List<String> lines = new ArrayList<>();
+			summary.forEach((key, value) -> lines.add(String.format(Locale.ROOT, "    \"%s\": %.3f", key, value)));
+			out.println(String.join(",\n", lines));
+			out.println("  }");
+			out.println("}");
+		}
+	}
+
+	static String json(final Map<String, Double> values) {
+		return "{ " + String.join(", ", values
+			.entrySet()
+			.stream()
+			.map(entry -> String.format(Locale.ROOT, "\"%s\": %.3f", entry.getKey(), entry.getValue()))
+			.toList()) + " }";
+	}
+
+	static Map<String, Double> read(final File file) throws IOException {
+		final Map<String, Double> result = new LinkedHashMap<>();
+		boolean inSummary = false;
+		for (final String line : Files.readAllLines(file.toPath())) {
+			if (line.contains("\"summary\"")) {
+				inSummary = true;
+			} else if (inSummary) {
+				final Matcher matcher = SUMMARY.matcher(line);
+				if (matcher.matches()) {
+					result.put(matcher.group(1), Double.valueOf(matcher.group(2)));
+				}
+			}
+		}
+		return result;
+	}
+
+	static void compare(final Map<String, Double> baseline, final Map<String, Double> summary, final PrintStream out) {
+		out.printf("%-40s %14s %14s %9s%n", "metric", "baseline", "current", "change");
+		summary.forEach((key, value) -> {
+			final Double before = baseline.get(key);
+			out.printf("%-40s %14s %14.2f %9s%n",
+				key,
+				before != null ? "%.2f".formatted(before) : "-",
+				value,
+				before != null && before.doubleValue() != 0 ? "%+.1f%%".formatted(100 * (value.doubleValue() / before.doubleValue() - 1)) : "-");
+		});
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.example.demo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.Map;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Endpoints used by the benchmark in {@code benchmark/Benchmark.java}.
+ */
+@RestController
+public class WorkController {
+
+	private final WorkService service;
+
+	public WorkController(final WorkService service) {
+		this.service = service;
+	}
+
+	@GetMapping("/work")
+	public Map<String, Object> work(@RequestParam(defaultValue = "50") final int n) {
+		return Map.of("result", Long.valueOf(service.compute(n)));
+	}
+
+	@GetMapping("/memory")
+	public Map<String, Object> memory() {
+		System.gc();
+		long metaspace = 0;
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if ("Metaspace".equals(pool.getName())) {
+				metaspace = pool.getUsage().getUsed();
+			}
+		}
+		return Map.of(
+			"heapUsed", Long.valueOf(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed()),
+			"metaspaceUsed", Long.valueOf(metaspace));
+	}
+
+}
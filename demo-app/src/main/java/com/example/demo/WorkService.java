@@ -0,0 +1,49 @@
+package com.example.demo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+
+/**
+ * Some work spread over several small methods, so that the probes
+ * of the agent are exercised on each request.
+ */
+@Service
+public class WorkService {
+
+	public long compute(final int n) {
+		final List<String> words = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			words.add(word(i));
+		}
+		words.sort(Comparator.comparing(WorkService::key));
+		long result = 0;
+		for (final String word : words) {
+			result += checksum(word);
+		}
+		return result + fibonacci(Math.min(n, 20));
+	}
+
+	private static String word(final int i) {
+		return Integer.toString(i * 7919, 36);
+	}
+
+	private static int key(final String word) {
+		return word.length() * 31 + word.charAt(0);
+	}
+
+	private static long checksum(final String word) {
+		long result = 0;
+		for (int i = 0; i < word.length(); i++) {
+			result = result * 31 + word.charAt(i);
+		}
+		return result;
+	}
+
+	private static long fibonacci(final int n) {
+		return n < 2 ? n : fibonacci(n - 1) + fibonacci(n - 2);
+	}
+
+}
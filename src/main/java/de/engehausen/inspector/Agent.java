@@ -1,10 +1,12 @@
 package de.engehausen.inspector;
 
+import java.io.UncheckedIOException;
 import java.lang.instrument.Instrumentation;
 
 /**
  * Main agent class. Creates the transformer and adds a shutdown
- * hook for reporting purposes.
+ * hook for reporting purposes. The transformer is not registered
+ * if the classes were instrumented ahead of time.
  */
 public class Agent {
 
@@ -15,8 +17,18 @@ public class Agent {
 	 * @param instrumentation the instrumentation instance
 	 */
 	public static void premain(final String agentArgs, final Instrumentation instrumentation) {
-		final var transformer = new Transformer(agentArgs);
-		instrumentation.addTransformer(transformer);
+		final Transformer transformer;
+		try {
+			transformer = new Transformer(agentArgs, instrumentation);
+		} catch (UncheckedIOException e) {
+			// without its configuration or manifest, the agent would count the wrong classes
+			System.err.println(e.getCause().getMessage());
+			System.exit(1);
+			return;
+		}
+		if (transformer.transforming()) {
+			instrumentation.addTransformer(transformer, transformer.retransforming());
+		}
 		Runtime.getRuntime().addShutdownHook(transformer.atShutdown());
 	}
 
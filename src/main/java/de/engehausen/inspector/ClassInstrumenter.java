@@ -0,0 +1,483 @@
+package de.engehausen.inspector;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import de.engehausen.inspector.data.Configuration;
+import de.engehausen.inspector.data.InliningImpact;
+import de.engehausen.inspector.data.Report;
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtMethod;
+import javassist.Modifier;
+
+/**
+ * <p>Selects the classes and methods to count and inserts the probes of the
+ * {@link Transformer} into them. It is used by the agent at runtime and by the
+ * offline instrumentation; apart from registering the methods with the
+ * {@link MethodRegistry} and recording issues, it has no side effects.</p>
+ * <p>The instrumenter is thread-safe. The method ids are assigned in the order
+ * the classes are registered; callers needing deterministic ids register
+ * the classes in a deterministic order and insert the probes afterwards.</p>
+ */
+public class ClassInstrumenter {
+
+	protected final MethodRegistry registry;
+	protected final Consumer<String> issues;
+	protected final LongSupplier memory;
+	protected final IntFunction<String> modes;
+	protected final Pattern excludes;
+	protected final Pattern includes;
+	protected final MethodSelector methodSelector;
+	protected final Map<String, Integer> inliningThresholds;
+	protected final List<InliningImpact> inliningImpacts;
+	protected final Pattern[] generatedPatterns;
+	protected final String[] generatedNames;
+	protected final int maxGeneratedClasses;
+	protected final Set<String> generated;
+	protected final Map<String, Set<String>> sources;
+	protected final Integer maxMethods;
+	protected final Long maxMemory;
+	protected final Set<String> degraded;
+	protected final String probe;
+	protected int generatedSkipped;
+	protected int generatedCapped;
+
+	private static final Integer DEFAULT_MAX_GENERATED_CLASSES = Integer.valueOf(1000);
+
+	/**
+	 * Creates the instrumenter.
+	 * @param configuration the configuration of the agent
+	 * @param registry the registry to register the instrumented methods with
+	 * @param issues the consumer of issues seen during instrumentation
+	 * @param memory the estimate of the memory used for counting, checked against the budget
+	 * @param modes the mode of the probe of a method id as switched by the {@link OverheadGovernor},
+	 * {@code null} for regular counting
+	 */
+	public ClassInstrumenter(
+		final Configuration configuration,
+		final MethodRegistry registry,
+		final Consumer<String> issues,
+		final LongSupplier memory,
+		final IntFunction<String> modes) {
+		this.registry = registry;
+		this.issues = issues;
+		this.memory = memory;
+		this.modes = modes;
+		excludes = getPattern(configuration.excludes(), "^$");
+		includes = getPattern(configuration.includes(), ".+");
+		methodSelector = new MethodSelector(
+			Optional.ofNullable(configuration.minMethodSize()).orElse(0).intValue(),
+			Boolean.TRUE.equals(configuration.skipSynthetic()),
+			Boolean.TRUE.equals(configuration.skipAccessors()),
+			configuration.methodExcludes(),
+			configuration.methodIncludes());
+		inliningThresholds = Boolean.TRUE.equals(configuration.inlining()) ? inliningThresholds() : null;
+		inliningImpacts = new ArrayList<>();
+		// generated classes are instrumented like any other class unless rules are configured
+		final Map<String, String> rules = Optional
+			.ofNullable(configuration.generatedClasses())
+			.orElse(Map.of());
+		generatedPatterns = rules
+			.keySet()
+			.stream()
+			.map(Pattern::compile)
+			.toArray(Pattern[]::new);
+		generatedNames = rules.values().toArray(new String[rules.size()]);
+		maxGeneratedClasses = Optional.ofNullable(configuration.maxGeneratedClasses()).orElse(DEFAULT_MAX_GENERATED_CLASSES).intValue();
+		generated = new HashSet<>();
+		sources = new HashMap<>();
+		maxMethods = configuration.maxMethods();
+		maxMemory = Optional
+			.ofNullable(configuration.maxMemory())
+			.map(megabytes -> Long.valueOf(megabytes.longValue() << 20))
+			.orElse(null);
+		degraded = new HashSet<>();
+		probe = Boolean.TRUE.equals(configuration.timeline()) ? "countFirst(" : "count(";
+	}
+
+	/**
+	 * Classes that are generally excluded from instrumentation.
+	 * @param className the name of the class to check
+	 * @return {@code true} if the class is not to be instrumented
+	 */
+	public boolean untransformable(final String className) {
+		return className.startsWith("java/") ||
+			className.startsWith("com/sun/") ||
+			className.startsWith("sun/") ||
+			className.startsWith("jdk/") ||
+			className.startsWith("de/engehausen/inspector");
+	}
+
+	/**
+	 * Checks the name of the class with the exclusion and inclusion patterns.
+	 * Classes that match the exclusions or don't match the inclusions are
+	 * ignored
+	 * @param className the name of the class to check
+	 * @return  {@code true} if the class is to be ignored
+	 */
+	public boolean reject(final String className) {
+		return excludes.matcher(className).matches() ||
+			!includes.matcher(className).matches();
+	}
+
+	/**
+	 * Checks whether the given class can be instrumented.
+	 * @param candidate the class to check
+	 * @return {@code true} if it is considered instrumentable.
+	 */
+	public boolean modifiable(final CtClass candidate) {
+		return !(candidate.isAnnotation() || candidate.isArray() || candidate.isPrimitive());
+	}
+
+	/**
+	 * Applies the rules for generated classes to the name of a class. This is
+	 * checked before reading the class, so that skipped classes cost no further work.
+	 * @param className the name of the class
+	 * @return the name to count the class under: the name itself if no rule matches,
+	 * or {@code null} if the class is to be skipped
+	 */
+	public String countedName(final String className) {
+		for (int i = 0; i < generatedPatterns.length; i++) {
+			final Matcher matcher = generatedPatterns[i].matcher(className);
+			if (matcher.matches()) {
+				synchronized (generated) {
+					if (generatedNames[i].isEmpty()) {
+						generatedSkipped++;
+						return null;
+					}
+					if (generated.size() >= maxGeneratedClasses && !generated.contains(className)) {
+						if (generatedCapped++ == 0) {
+							issues.accept("more than %d generated classes, skipping %s and further ones".formatted(Integer.valueOf(maxGeneratedClasses), className));
+						}
+						return null;
+					}
+					final StringBuilder result = new StringBuilder();
+					matcher.appendReplacement(result, generatedNames[i]);
+					if (generated.add(className)) {
+						sources.computeIfAbsent(result.toString(), name -> new HashSet<>()).add(className);
+					}
+					return result.toString();
+				}
+			}
+		}
+		return className;
+	}
+
+	/**
+	 * Returns the names of the classes that may be counted under the given name: the
+	 * name itself and the generated classes mapped to it.
+	 * @param countedName the name a class is counted under
+	 * @return the names of the classes
+	 */
+	public Set<String> classNames(final String countedName) {
+		final Set<String> result = new HashSet<>();
+		result.add(countedName);
+		synchronized (generated) {
+			Optional
+				.ofNullable(sources.get(countedName))
+				.ifPresent(result::addAll);
+		}
+		return result;
+	}
+
+	/**
+	 * Selects the methods of a class to count.
+	 * @param srcClass the class
+	 * @return the selected methods, in the order they are declared
+	 */
+	public Selection select(final CtClass srcClass) {
+		final List<CtMethod> selected = new ArrayList<>();
+		final List<String> methodNames = new ArrayList<>();
+		final List<String> skipped = new ArrayList<>();
+		for (final CtMethod method : srcClass.getDeclaredMethods()) {
+			final String methodName = method.getName() + method.getSignature();
+			final String reason = methodSelector.skipReason(method);
+			// filtered methods are left out deliberately, listing them would only grow the report
+			if (reason == null) {
+				selected.add(method);
+				methodNames.add(methodName);
+			} else if (!MethodSelector.REASON_ABSTRACT.equals(reason) && !MethodSelector.REASON_FILTERED.equals(reason)) {
+				skipped.add(methodName);
+			}
+		}
+		return new Selection(selected, methodNames, skipped);
+	}
+
+	/**
+	 * Registers the selected methods of a class, or its class-level counter if the
+	 * budget is used up.
+	 * @param countedName the name to count the class under
+	 * @param selection the selected methods of the class
+	 * @param loader the handle of the class loader of the class, see {@link LoaderHandles}
+	 * @return the ids of the probes of the selected methods
+	 */
+	public synchronized int[] register(final String countedName, final Selection selection, final int loader) {
+		if (degrade(countedName, loader)) {
+			// all methods share the class-level counter
+			final int[] ids = new int[selection.names().size()];
+			Arrays.fill(ids, registry.register(loader, countedName, List.of(MethodRegistry.CLASS_PROBE))[0]);
+			return ids;
+		}
+		final int[] ids = registry.register(loader, countedName, selection.names());
+		if (!selection.skipped().isEmpty()) {
+			registry.notInstrumented(loader, countedName, selection.skipped());
+		}
+		return ids;
+	}
+
+	/**
+	 * Inserts the probes into the selected methods of a class.
+	 * @param srcClass the class
+	 * @param selection the selected methods of the class, see {@link #select(CtClass)}
+	 * @param ids the ids of the probes, see {@link #register(String, Selection, int)}
+	 * @param countedName the name the class is counted under
+	 * @return the instrumented classfile, or {@code null} if a probe could not be inserted
+	 * @throws CannotCompileException in case of error
+	 * @throws IOException in case of error
+	 */
+	public byte[] insert(final CtClass srcClass, final Selection selection, final int[] ids, final String countedName) throws CannotCompileException, IOException {
+		for (int i = 0; i < ids.length; i++) {
+			final String mode = modes.apply(ids[i]);
+			if (OverheadGovernor.MODE_REMOVED.equals(mode)) {
+				continue;
+			}
+			final CtMethod method = selection.methods().get(i);
+			final int originalSize = method.getMethodInfo().getCodeAttribute().getCodeLength();
+			try {
+				method.insertBefore("de.engehausen.inspector.Transformer." + (mode == null ? probe : "countSampled(") + ids[i] + ");");
+			} catch (Throwable t) {
+				issues.accept("cannot insert counter to %s%s: %s=%s".formatted(srcClass.getName(), selection.names().get(i), t.getClass().getName(), t.getMessage()));
+				return null;
+			}
+			if (inliningThresholds != null) {
+				checkInlining(countedName, selection.names().get(i), originalSize, method.getMethodInfo().getCodeAttribute().getCodeLength());
+			}
+		}
+		return srcClass.toBytecode();
+	}
+
+	/**
+	 * Instruments a class to count its method invocations under the given name.
+	 * @param srcClass the class
+	 * @param countedName the name to count the class under
+	 * @param loader the handle of the class loader of the class, see {@link LoaderHandles}
+	 * @return the instrumented classfile, or {@code null} if the class is not instrumented
+	 * @throws CannotCompileException in case of error
+	 * @throws IOException in case of error
+	 */
+	public byte[] instrument(final CtClass srcClass, final String countedName, final int loader) throws CannotCompileException, IOException {
+		if (!modifiable(srcClass)) {
+			return null;
+		}
+		final Selection selection = select(srcClass);
+		return insert(srcClass, selection, register(countedName, selection, loader), countedName);
+	}
+
+	/**
+	 * Adds a class-level probe to the given class for tiered instrumentation.
+	 * The probe is inserted into the constructors and static methods (for
+	 * interfaces, into all non-abstract methods), so that it fires when the
+	 * class is actually used rather than just loaded or initialized.
+	 * @param srcClass the class
+	 * @param className the name of the class
+	 * @param loader the handle of the class loader of the class, see {@link LoaderHandles}
+	 * @return the instrumented classfile, or {@code null} if the class is not instrumented
+	 * @throws CannotCompileException in case of error
+	 * @throws IOException in case of error
+	 */
+	public byte[] instrumentClass(final CtClass srcClass, final String className, final int loader) throws CannotCompileException, IOException {
+		if (!modifiable(srcClass)) {
+			return null;
+		}
+		final boolean isInterface = srcClass.isInterface();
+		final List<CtMethod> selected = new ArrayList<>();
+		for (final CtMethod method : srcClass.getDeclaredMethods()) {
+			final int modifiers = method.getModifiers();
+			if (!Modifier.isAbstract(modifiers) && !Modifier.isNative(modifiers) && (isInterface || Modifier.isStatic(modifiers))) {
+				selected.add(method);
+			}
+		}
+		final CtConstructor[] constructors = srcClass.getDeclaredConstructors();
+		if (selected.isEmpty() && constructors.length == 0) {
+			return null;
+		}
+		final String touch = "de.engehausen.inspector.Transformer.touch(" + registry.register(loader, className, List.of(MethodRegistry.CLASS_PROBE))[0] + ");";
+		for (final CtConstructor constructor : constructors) {
+			constructor.insertBeforeBody(touch);
+		}
+		for (final CtMethod method : selected) {
+			method.insertBefore(touch);
+		}
+		return srcClass.toBytecode();
+	}
+
+	/**
+	 * Returns whether a class is counted with a single class-level counter
+	 * because the budget was used up.
+	 * @param countedName the name the class is counted under
+	 * @return {@code true} if the class was degraded
+	 */
+	public synchronized boolean degraded(final String countedName) {
+		return degraded.contains(countedName);
+	}
+
+	/**
+	 * Returns the budget meta information of the report.
+	 * @return the methods registered, the estimated memory and the degraded classes,
+	 * or {@code null} if no budget is configured
+	 */
+	public synchronized Map<String, Object> budget() {
+		if (maxMethods == null && maxMemory == null) {
+			return null;
+		}
+		return Map.of(
+			Report.KEY_BUDGET_METHODS, Integer.valueOf(registry.size()),
+			Report.KEY_BUDGET_MEMORY, Long.valueOf(memory.getAsLong()),
+			Report.KEY_BUDGET_DEGRADED, degraded.stream().sorted().toList());
+	}
+
+	/**
+	 * Returns the generated classes meta information of the report.
+	 * @return the numbers of mapped, skipped and capped generated classes, or {@code null}
+	 * if no generated class was seen
+	 */
+	public Map<String, Object> generated() {
+		synchronized (generated) {
+			if (generated.isEmpty() && generatedSkipped == 0 && generatedCapped == 0) {
+				return null;
+			}
+			return Map.of(
+				Report.KEY_GENERATED_MAPPED, Integer.valueOf(generated.size()),
+				Report.KEY_GENERATED_SKIPPED, Integer.valueOf(generatedSkipped),
+				Report.KEY_GENERATED_CAPPED, Integer.valueOf(generatedCapped));
+		}
+	}
+
+	/**
+	 * Returns the methods whose instrumented size crosses an inlining threshold.
+	 * @return the inlining impacts, or {@code null} if they are not checked
+	 */
+	public List<InliningImpact> inliningImpacts() {
+		if (inliningThresholds == null) {
+			return null;
+		}
+		synchronized (inliningImpacts) {
+			return new ArrayList<>(inliningImpacts);
+		}
+	}
+
+	/**
+	 * Checks whether a class is to be counted with a single class-level counter
+	 * because the budget of methods or memory is used up. Classes with methods
+	 * counted individually keep them, e.g. when retransformed by the governor.
+	 * @param className the name to count the class under
+	 * @param loader the handle of the class loader of the class
+	 * @return {@code true} if the methods of the class are not to be counted individually
+	 */
+	protected synchronized boolean degrade(final String className, final int loader) {
+		if (degraded.contains(className)) {
+			return true;
+		}
+		if (maxMethods == null && maxMemory == null) {
+			return false;
+		}
+		final MethodRegistry.ClassEntry entry = registry.entry(loader, className);
+		if (entry != null && !(entry.methods().length == 1 && MethodRegistry.CLASS_PROBE.equals(entry.methods()[0]))) {
+			return false;
+		}
+		if ((maxMethods != null && registry.size() >= maxMethods.intValue()) ||
+			(maxMemory != null && memory.getAsLong() >= maxMemory.longValue())) {
+			if (degraded.isEmpty()) {
+				issues.accept("budget used up at %d methods and %d bytes, counting further classes at class level".formatted(Integer.valueOf(registry.size()), Long.valueOf(memory.getAsLong())));
+			}
+			degraded.add(className);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Records the inlining thresholds crossed by instrumenting a method.
+	 * @param className the name of the class
+	 * @param methodName the name and signature of the method
+	 * @param originalSize the bytecode length before instrumentation
+	 * @param instrumentedSize the bytecode length after instrumentation
+	 */
+	protected void checkInlining(final String className, final String methodName, final int originalSize, final int instrumentedSize) {
+		inliningThresholds.forEach((threshold, limit) -> {
+			if (originalSize <= limit.intValue() && instrumentedSize > limit.intValue()) {
+				synchronized (inliningImpacts) {
+					inliningImpacts.add(new InliningImpact(className, methodName, originalSize, instrumentedSize, threshold, limit.intValue()));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Determines the HotSpot inlining thresholds of the running VM. If a
+	 * value cannot be determined, the HotSpot default is used.
+	 * @return a map of the threshold name to its value
+	 */
+	protected Map<String, Integer> inliningThresholds() {
+		final Map<String, Integer> result = new LinkedHashMap<>();
+		result.put("MaxTrivialSize", Integer.valueOf(6));
+		result.put("MaxInlineSize", Integer.valueOf(35));
+		result.put("FreqInlineSize", Integer.valueOf(325));
+		try {
+			final HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+			result.replaceAll((option, value) -> Integer.valueOf(bean.getVMOption(option).getValue()));
+		} catch (RuntimeException e) {
+			issues.accept("cannot determine inlining thresholds, using defaults: %s=%s".formatted(e.getClass().getName(), e.getMessage()));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a regular expression pattern based on a list of
+	 * regular expressions.
+	 * @param regexs a list of regular expressions, may be {@code null}
+	 * @param defaultPattern the default pattern to use of no expressions are given in the first parameter
+	 * @return a pattern to be used for exclusions and inclusions
+	 */
+	protected Pattern getPattern(final List<String> regexs, final String defaultPattern) {
+		if (regexs == null || regexs.isEmpty()) {
+			return Pattern.compile(defaultPattern, Pattern.MULTILINE);
+		}
+		return Pattern.compile(regexs
+			.stream()
+			.reduce("", (current, next) -> {
+				if (current.length() == 0) {
+					return "(%s)".formatted(next);
+				}
+				return "%s|(%s)".formatted(current, next);
+			})
+		);
+	}
+
+	/**
+	 * The methods of a class selected for counting.
+	 * @param methods the selected methods
+	 * @param names the names and signatures of the selected methods
+	 * @param skipped the names and signatures of the methods not instrumented for being trivial
+	 */
+	public record Selection(List<CtMethod> methods, List<String> names, List<String> skipped) {}
+
+}
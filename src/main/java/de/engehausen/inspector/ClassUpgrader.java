@@ -0,0 +1,147 @@
+package de.engehausen.inspector;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>Retransforms classes in the background on request. This is used by tiered
+ * instrumentation: the class-level probe requests the upgrade of its class,
+ * and the retransformation lets the {@link Transformer} add the method-level probes.
+ * The {@link OverheadGovernor} uses it to change the probes of hot methods.</p>
+ * <p>Requests are collected for a short time, so that the loaded classes are
+ * looked up once for a batch of classes.</p>
+ */
+public class ClassUpgrader {
+
+	/** time in milliseconds to collect further requests before retransforming */
+	public static final long BATCH_DELAY_MS = 50L;
+
+	protected final Instrumentation instrumentation;
+	protected final Consumer<String> issues;
+	protected final BlockingQueue<String> requests;
+	protected final Thread thread;
+	// number of requests made and processed, guarded by this
+	private long made;
+	private long processed;
+
+	/**
+	 * Creates the upgrader; call {@link #start()} to begin processing requests.
+	 * @param instrumentation the instrumentation used to retransform classes
+	 * @param issues receives the problems during retransformation
+	 */
+	public ClassUpgrader(final Instrumentation instrumentation, final Consumer<String> issues) {
+		this.instrumentation = instrumentation;
+		this.issues = issues;
+		requests = new LinkedBlockingQueue<>();
+		thread = new Thread(this::run, "usage-inspector-upgrader");
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Starts processing requests in the background.
+	 */
+	public void start() {
+		thread.start();
+	}
+
+	/**
+	 * Stops processing requests; pending requests are dropped.
+	 */
+	public void close() {
+		thread.interrupt();
+	}
+
+	/**
+	 * Requests the retransformation of all loaded classes of the given name.
+	 * This does not block and can be called from a probe.
+	 * @param className the name of the class, separated by {@code /}
+	 */
+	public void request(final String className) {
+		synchronized (this) {
+			made++;
+		}
+		requests.offer(className);
+	}
+
+	/**
+	 * Waits until the requests made so far are processed.
+	 * @param timeoutMs the maximum time to wait in milliseconds
+	 * @return {@code true} if the requests are processed, {@code false} on timeout
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized boolean await(final long timeoutMs) throws InterruptedException {
+		final long target = made;
+		final long deadline = System.currentTimeMillis() + timeoutMs;
+		for (long remaining = timeoutMs; processed < target && remaining > 0; remaining = deadline - System.currentTimeMillis()) {
+			wait(remaining);
+		}
+		return processed >= target;
+	}
+
+	/**
+	 * Returns the names of the loaded classes among the given ones that can be retransformed.
+	 * This looks up all loaded classes and is meant for rare checks.
+	 * @param classNames the names of the classes, separated by {@code /}
+	 * @return the names of the classes that can be retransformed
+	 */
+	public Set<String> modifiable(final Set<String> classNames) {
+		return Stream
+			.of(instrumentation.getAllLoadedClasses())
+			.filter(instrumentation::isModifiableClass)
+			.map(candidate -> candidate.getName().replace('.', '/'))
+			.filter(classNames::contains)
+			.collect(Collectors.toSet());
+	}
+
+	/**
+	 * Retransforms the loaded classes of the given names.
+	 * @param classNames the names of the classes, separated by {@code /}
+	 */
+	protected void upgrade(final Set<String> classNames) {
+		final Class<?>[] classes = Stream
+			.of(instrumentation.getAllLoadedClasses())
+			.filter(candidate -> classNames.contains(candidate.getName().replace('.', '/')))
+			.filter(instrumentation::isModifiableClass)
+			.toArray(Class<?>[]::new);
+		try {
+			instrumentation.retransformClasses(classes);
+		} catch (UnmodifiableClassException|RuntimeException|LinkageError e) {
+			// retry individually, so that a single class cannot prevent the others' upgrade
+			for (final Class<?> clazz : classes) {
+				try {
+					instrumentation.retransformClasses(clazz);
+				} catch (UnmodifiableClassException|RuntimeException|LinkageError inner) {
+					issues.accept("cannot upgrade %s: %s=%s".formatted(clazz.getName(), inner.getClass().getName(), inner.getMessage()));
+				}
+			}
+		}
+	}
+
+	private void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				final List<String> batch = new ArrayList<>(List.of(requests.take()));
+				TimeUnit.MILLISECONDS.sleep(BATCH_DELAY_MS);
+				requests.drainTo(batch);
+				upgrade(new HashSet<>(batch));
+				synchronized (this) {
+					processed += batch.size();
+					notifyAll();
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+}
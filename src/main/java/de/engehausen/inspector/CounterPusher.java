@@ -0,0 +1,219 @@
+package de.engehausen.inspector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Periodically sends the counter deltas of a {@link MethodRegistry} to a
+ * collector process over a loopback TCP or Unix domain socket. Each batch
+ * carries the names of methods not yet sent over the connection (a name table
+ * sent once) and the deltas keyed by method id.</p>
+ * <p>All work happens on a background thread; the probes are not affected.
+ * If the collector is missing or too slow, the connection is dropped and
+ * retried with the next batch; deltas not sent are carried over.</p>
+ */
+public class CounterPusher {
+
+	/** magic number of the connection header */
+	public static final int MAGIC = 0x55494331;
+
+	private static final long CONNECT_TIMEOUT_MS = 1000L;
+	private static final long WRITE_TIMEOUT_MS = 1000L;
+
+	protected final MethodRegistry registry;
+	protected final SocketAddress address;
+	protected final String agentId;
+	protected final ScheduledExecutorService executor;
+	private SocketChannel channel;
+	private int namesSent;
+	private int[] sent;
+
+	/**
+	 * Creates the pusher; call {@link #start(long)} to begin sending.
+	 * @param registry the registry with the counters
+	 * @param collector the collector address, see {@link #address(String)}
+	 */
+	public CounterPusher(final MethodRegistry registry, final String collector) {
+		this.registry = registry;
+		address = address(collector);
+		agentId = ManagementFactory.getRuntimeMXBean().getName();
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "usage-inspector-pusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		sent = new int[0];
+	}
+
+	/**
+	 * Converts a collector specification to a socket address.
+	 * @param collector a port number for a TCP socket on the loopback interface,
+	 * or the path of a Unix domain socket
+	 * @return the socket address
+	 */
+	public static SocketAddress address(final String collector) {
+		if (collector.chars().allMatch(Character::isDigit)) {
+			return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(collector));
+		}
+		return UnixDomainSocketAddress.of(collector);
+	}
+
+	/**
+	 * Starts sending batches periodically.
+	 * @param intervalMs the interval between batches in milliseconds
+	 */
+	public void start(final long intervalMs) {
+		executor.scheduleWithFixedDelay(this::push, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the periodic sending, sends a final batch and closes the connection.
+	 * Connecting and writing are limited in time, so that this can be called
+	 * from a shutdown hook.
+	 */
+	public void close() {
+		executor.shutdownNow();
+		push();
+		disconnect();
+	}
+
+	/**
+	 * Sends a batch with the deltas since the last successful batch.
+	 * Problems are silently ignored; the deltas are sent with the next batch.
+	 */
+	public synchronized void push() {
+		final int size = registry.size();
+		final int[] counts = new int[size];
+		for (int id = 0; id < size; id++) {
+			counts[id] = registry.count(id);
+		}
+		try {
+			if (channel == null) {
+				connect();
+			}
+			write(batch(counts));
+			sent = counts;
+			namesSent = size;
+		} catch (IOException e) {
+			disconnect();
+		}
+	}
+
+	/**
+	 * Encodes a batch.
+	 * @param counts the current counts
+	 * @return the encoded batch, prefixed with its length
+	 * @throws IOException in case of error
+	 */
+	protected byte[] batch(final int[] counts) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0);
+		out.writeInt(counts.length - namesSent);
+		for (int id = namesSent; id < counts.length; id++) {
+			out.writeInt(id);
+			out.writeUTF(registry.className(id));
+			out.writeUTF(registry.method(id));
+		}
+		int deltas = 0;
+		for (int id = 0; id < counts.length; id++) {
+			if (counts[id] != previous(id)) {
+				deltas++;
+			}
+		}
+		out.writeInt(deltas);
+		for (int id = 0; id < counts.length; id++) {
+			if (counts[id] != previous(id)) {
+				out.writeInt(id);
+				out.writeInt(counts[id] - previous(id));
+			}
+		}
+		out.flush();
+		final byte[] result = bytes.toByteArray();
+		ByteBuffer.wrap(result).putInt(result.length - Integer.BYTES);
+		return result;
+	}
+
+	private int previous(final int id) {
+		return id < sent.length ? sent[id] : 0;
+	}
+
+	/**
+	 * Connects to the collector and sends the connection header, giving up if the
+	 * collector does not accept the connection in time.
+	 * @throws IOException in case of error or timeout
+	 */
+	protected void connect() throws IOException {
+		channel = address instanceof UnixDomainSocketAddress ?
+			SocketChannel.open(StandardProtocolFamily.UNIX) :
+			SocketChannel.open();
+		channel.configureBlocking(false);
+		final long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+		if (!channel.connect(address)) {
+			while (!channel.finishConnect()) {
+				if (System.currentTimeMillis() > deadline) {
+					throw new IOException("collector does not accept the connection");
+				}
+				pause();
+			}
+		}
+		namesSent = 0;
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeUTF(agentId);
+		out.flush();
+		write(bytes.toByteArray());
+	}
+
+	/**
+	 * Writes the data, giving up if the collector does not accept it in time.
+	 * @param data the data to write
+	 * @throws IOException in case of error or timeout
+	 */
+	protected void write(final byte[] data) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(data);
+		final long deadline = System.currentTimeMillis() + WRITE_TIMEOUT_MS;
+		while (buffer.hasRemaining()) {
+			if (channel.write(buffer) == 0) {
+				if (System.currentTimeMillis() > deadline) {
+					throw new IOException("collector does not accept data");
+				}
+				pause();
+			}
+		}
+	}
+
+	private static void pause() throws IOException {
+		try {
+			Thread.sleep(1);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+
+	private void disconnect() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// ignored, reconnecting with next batch
+			}
+			channel = null;
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+package de.engehausen.inspector;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Keeps the counts of a {@link MethodRegistry} for a fixed number of time windows.
+ * A background ticker takes a snapshot of all counters at the start of each window
+ * into a ring of snapshots; the calls of a method within a window are the difference
+ * of two consecutive snapshots. The probes are not affected, and the memory is
+ * bounded by the number of windows times the number of methods.</p>
+ */
+public class CounterWindows {
+
+	protected final MethodRegistry registry;
+	protected final long interval;
+	protected final ScheduledExecutorService executor;
+	// snapshots of the cumulative counts at the start of the windows
+	private final int[][] ring;
+	private int ticks;
+
+	/**
+	 * Creates the windows; call {@link #start()} to begin the first window.
+	 * @param registry the registry with the counters
+	 * @param windows the number of windows to keep
+	 * @param interval the length of a window in milliseconds
+	 */
+	public CounterWindows(final MethodRegistry registry, final int windows, final long interval) {
+		if (windows < 1 || interval < 1) {
+			throw new IllegalArgumentException("windows and interval must be positive");
+		}
+		this.registry = registry;
+		this.interval = interval;
+		ring = new int[windows][];
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "usage-inspector-windows");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts the first window and rotates the windows periodically.
+	 */
+	public void start() {
+		tick();
+		executor.scheduleAtFixedRate(this::tick, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops rotating the windows.
+	 */
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Returns the number of windows kept.
+	 * @return the number of windows
+	 */
+	public int windows() {
+		return ring.length;
+	}
+
+	/**
+	 * Returns the length of a window.
+	 * @return the length in milliseconds
+	 */
+	public long interval() {
+		return interval;
+	}
+
+	/**
+	 * Starts a new window, dropping the oldest one if all windows are in use.
+	 */
+	public void tick() {
+		final int size = registry.size();
+		final int[] snapshot = new int[size];
+		for (int id = 0; id < size; id++) {
+			snapshot[id] = registry.count(id);
+		}
+		synchronized (this) {
+			ring[ticks++ % ring.length] = snapshot;
+		}
+	}
+
+	/**
+	 * Returns the snapshots taken at the start of the windows still kept.
+	 * @return the snapshots, oldest first
+	 */
+	public synchronized int[][] snapshots() {
+		final int used = Math.min(ticks, ring.length);
+		final int[][] result = new int[used][];
+		for (int i = 0; i < used; i++) {
+			result[i] = ring[(ticks - used + i) % ring.length];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of calls per window of a group of methods, such as
+	 * the methods of a class.
+	 * @param snapshots the snapshots, see {@link #snapshots()}
+	 * @param ids the ids of the methods
+	 * @param counts the current counts of the methods, parallel to {@code ids}
+	 * @return the number of calls per window, oldest first; the last window is the
+	 * current, incomplete one
+	 */
+	public static int[] calls(final int[][] snapshots, final int[] ids, final int[] counts) {
+		final int[] result = new int[snapshots.length];
+		for (int window = 0; window < snapshots.length; window++) {
+			for (int i = 0; i < ids.length; i++) {
+				final int end = window + 1 < snapshots.length ? count(snapshots[window + 1], ids[i]) : counts[i];
+				result[window] += end - count(snapshots[window], ids[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the count of a method in a snapshot. Methods registered after
+	 * the snapshot was taken have a count of zero.
+	 * @param snapshot the snapshot
+	 * @param id the method id
+	 * @return the count at the time of the snapshot
+	 */
+	public static int count(final int[] snapshot, final int id) {
+		return id < snapshot.length ? snapshot[id] : 0;
+	}
+
+}
@@ -0,0 +1,213 @@
+package de.engehausen.inspector;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * <p>Periodically publishes the counter deltas of a {@link MethodRegistry} as
+ * Java Flight Recorder events, so that the usage is part of a continuous recording
+ * and can be correlated with the other events of the VM. Each batch consists of
+ * a {@link ClassUsage} event per class called since the last batch, a
+ * {@link MethodUsage} event for each of the methods called most since the last
+ * batch and one {@link AgentStatistics} event.</p>
+ * <p>All work happens on a background thread; the probes are not affected. If
+ * no recording is running, the events are not enabled and the batch is skipped.</p>
+ */
+public class EventPublisher {
+
+	/** category of the events in recordings */
+	public static final String CATEGORY = "Usage Inspector";
+
+	protected final MethodRegistry registry;
+	protected final int topMethods;
+	protected final ScheduledExecutorService executor;
+	private int[] published;
+
+	/**
+	 * Creates the publisher; call {@link #start(long)} to begin publishing.
+	 * @param registry the registry with the counters
+	 * @param topMethods the number of methods called most to publish per batch
+	 */
+	public EventPublisher(final MethodRegistry registry, final int topMethods) {
+		if (topMethods < 0) {
+			throw new IllegalArgumentException("number of top methods must not be negative");
+		}
+		this.registry = registry;
+		this.topMethods = topMethods;
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "usage-inspector-events");
+			thread.setDaemon(true);
+			return thread;
+		});
+		published = new int[0];
+	}
+
+	/**
+	 * Starts publishing batches periodically.
+	 * @param intervalMs the interval between batches in milliseconds
+	 */
+	public void start(final long intervalMs) {
+		executor.scheduleWithFixedDelay(this::publish, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the periodic publishing and publishes a final batch.
+	 */
+	public void close() {
+		executor.shutdownNow();
+		publish();
+	}
+
+	/**
+	 * Publishes a batch with the deltas since the last batch published.
+	 */
+	public synchronized void publish() {
+		final AgentStatistics statistics = new AgentStatistics();
+		if (!statistics.isEnabled()) {
+			return;
+		}
+		statistics.begin();
+		final long start = System.nanoTime();
+		// classes registered meanwhile are left for the next batch, the counts cover the ids of this snapshot
+		final List<MethodRegistry.ClassEntry> classes = registry.classes();
+		final int size = classes
+			.stream()
+			.flatMapToInt(entry -> Arrays.stream(entry.ids()))
+			.max()
+			.orElse(-1) + 1;
+		final int[] counts = new int[size];
+		for (int id = 0; id < size; id++) {
+			counts[id] = registry.count(id);
+		}
+		final PriorityQueue<Integer> top = new PriorityQueue<>(Comparator.comparingInt((Integer id) -> delta(counts, id.intValue())));
+		long calls = 0;
+		int used = 0;
+		for (final MethodRegistry.ClassEntry entry : classes) {
+			long classCalls = 0;
+			long classTotal = 0;
+			for (final int id : entry.ids()) {
+				final int delta = delta(counts, id);
+				classCalls += delta;
+				classTotal += counts[id];
+				if (topMethods > 0 && delta > 0) {
+					top.add(Integer.valueOf(id));
+					if (top.size() > topMethods) {
+						top.poll();
+					}
+				}
+			}
+			if (classCalls > 0) {
+				final ClassUsage event = new ClassUsage();
+				event.className = entry.name();
+				event.calls = classCalls;
+				event.totalCalls = classTotal;
+				event.commit();
+				calls += classCalls;
+				used++;
+			}
+		}
+		final Integer[] ranked = top.toArray(new Integer[top.size()]);
+		Arrays.sort(ranked, Comparator.comparingInt((Integer id) -> delta(counts, id.intValue())).reversed());
+		for (int rank = 0; rank < ranked.length; rank++) {
+			final int id = ranked[rank].intValue();
+			final MethodUsage event = new MethodUsage();
+			event.className = registry.className(id);
+			event.method = registry.method(id);
+			event.calls = delta(counts, id);
+			event.rank = rank + 1;
+			event.commit();
+		}
+		published = counts;
+		statistics.classes = classes.size();
+		statistics.methods = size;
+		statistics.usedClasses = used;
+		statistics.calls = calls;
+		statistics.publishTime = System.nanoTime() - start;
+		statistics.commit();
+	}
+
+	private int delta(final int[] counts, final int id) {
+		return counts[id] - CounterWindows.count(published, id);
+	}
+
+	/**
+	 * The calls of a class since the previous batch.
+	 */
+	@Name("de.engehausen.inspector.ClassUsage")
+	@Label("Class Usage")
+	@Description("Calls of the methods of a class since the previous batch")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static class ClassUsage extends Event {
+		@Label("Class")
+		public String className;
+		@Label("Calls")
+		@Description("Calls since the previous batch")
+		public long calls;
+		@Label("Total Calls")
+		@Description("Calls since the start of the agent")
+		public long totalCalls;
+	}
+
+	/**
+	 * The calls of one of the methods called most since the previous batch.
+	 */
+	@Name("de.engehausen.inspector.MethodUsage")
+	@Label("Method Usage")
+	@Description("Calls of one of the methods called most since the previous batch")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static class MethodUsage extends Event {
+		@Label("Class")
+		public String className;
+		@Label("Method")
+		public String method;
+		@Label("Calls")
+		@Description("Calls since the previous batch")
+		public long calls;
+		@Label("Rank")
+		@Description("Rank by calls within the batch, starting at 1")
+		public int rank;
+	}
+
+	/**
+	 * Statistics of the agent, one per batch.
+	 */
+	@Name("de.engehausen.inspector.AgentStatistics")
+	@Label("Agent Statistics")
+	@Description("Statistics of the usage inspector agent")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static class AgentStatistics extends Event {
+		@Label("Classes")
+		@Description("Number of instrumented classes")
+		public int classes;
+		@Label("Methods")
+		@Description("Number of instrumented methods")
+		public int methods;
+		@Label("Used Classes")
+		@Description("Number of classes called since the previous batch")
+		public int usedClasses;
+		@Label("Calls")
+		@Description("Calls since the previous batch")
+		public long calls;
+		@Label("Publish Time")
+		@Description("Time to publish the batch")
+		@Timespan(Timespan.NANOSECONDS)
+		public long publishTime;
+	}
+
+}
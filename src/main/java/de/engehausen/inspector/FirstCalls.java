@@ -0,0 +1,120 @@
+package de.engehausen.inspector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import de.engehausen.inspector.data.FirstCall;
+
+/**
+ * <p>Records the first call of the methods of a {@link MethodRegistry}: the time
+ * in nanoseconds since the start of the agent and the name of the calling thread.
+ * The slot of a method is claimed by a single compare-and-set of the thread name
+ * while it is still empty, and the time is written after it, so that a recorded
+ * time always has its thread; afterwards, recording a call only reads the slot.</p>
+ * <p>The slots are held in pages indexed by the method id like the counters of
+ * the registry; a page is added on the first call of a method in it.</p>
+ */
+public class FirstCalls {
+
+	protected final long start;
+	// written only with synchronization, but read by the probes without
+	private volatile Page[] pages;
+
+	/**
+	 * Creates the first calls, starting the time now.
+	 */
+	public FirstCalls() {
+		start = System.nanoTime();
+		pages = new Page[0];
+	}
+
+	/**
+	 * Records a call of the method, if it is the first one.
+	 * @param id the method id
+	 */
+	public void record(final int id) {
+		final Page page = page(id >>> MethodRegistry.PAGE_BITS);
+		final int slot = id & MethodRegistry.PAGE_MASK;
+		// zero marks an empty slot, so a call at the very start is recorded as one nanosecond
+		if (page.times().get(slot) == 0L && page.threads().get(slot) == null) {
+			final long time = Math.max(1L, System.nanoTime() - start);
+			if (page.threads().compareAndSet(slot, null, Thread.currentThread().getName())) {
+				page.times().set(slot, time);
+			}
+		}
+	}
+
+	/**
+	 * Returns the time of the first call of a method.
+	 * @param id the method id
+	 * @return the time in nanoseconds since the start, {@code 0} if the method was not called
+	 */
+	public long time(final int id) {
+		final Page[] current = pages;
+		final int index = id >>> MethodRegistry.PAGE_BITS;
+		return index < current.length ? current[index].times().get(id & MethodRegistry.PAGE_MASK) : 0L;
+	}
+
+	/**
+	 * Returns the name of the thread that made the first call of a method.
+	 * @param id the method id
+	 * @return the name of the thread, or {@code null} if the method was not called
+	 */
+	public String thread(final int id) {
+		final Page[] current = pages;
+		final int index = id >>> MethodRegistry.PAGE_BITS;
+		return index < current.length ? current[index].threads().get(id & MethodRegistry.PAGE_MASK) : null;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the slots.
+	 * @return the estimated memory in bytes
+	 */
+	public long memory() {
+		// a time and a reference per slot, the names of the threads are mostly shared
+		return (long) pages.length * MethodRegistry.PAGE_SIZE * (Long.BYTES + Integer.BYTES);
+	}
+
+	/**
+	 * Returns the first calls of all methods called so far.
+	 * @param registry the registry with the names of the methods
+	 * @return the first calls, ordered by time
+	 */
+	public List<FirstCall> timeline(final MethodRegistry registry) {
+		final List<FirstCall> result = new ArrayList<>();
+		final int size = registry.size();
+		for (int id = 0; id < size; id++) {
+			final long time = time(id);
+			if (time > 0L) {
+				result.add(new FirstCall(registry.className(id), registry.method(id), time, thread(id)));
+			}
+		}
+		result.sort(Comparator.comparingLong(FirstCall::time));
+		return result;
+	}
+
+	private Page page(final int index) {
+		final Page[] current = pages;
+		return index < current.length ? current[index] : grow(index);
+	}
+
+	private synchronized Page grow(final int index) {
+		if (index >= pages.length) {
+			final Page[] next = Arrays.copyOf(pages, index + 1);
+			for (int i = pages.length; i < next.length; i++) {
+				next[i] = new Page(
+					new AtomicLongArray(MethodRegistry.PAGE_SIZE),
+					new AtomicReferenceArray<>(MethodRegistry.PAGE_SIZE));
+			}
+			pages = next;
+		}
+		return pages[index];
+	}
+
+	private record Page(AtomicLongArray times, AtomicReferenceArray<String> threads) {}
+
+}
@@ -0,0 +1,93 @@
+package de.engehausen.inspector;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * <p>Assigns compact handles to class loaders, so that the {@link MethodRegistry}
+ * can key classes by loader without holding on to the loaders. The loaders are
+ * only referenced weakly; a loader that was garbage collected is reported once by
+ * {@link #dead()}, so that its classes can be retired.</p>
+ * <p>The handle {@code 0} stands for the bootstrap and the system class loader,
+ * whose classes are never unloaded. Handles are not reused.</p>
+ */
+public class LoaderHandles {
+
+	protected final Map<Reference<? extends ClassLoader>, Integer> references;
+	private final Map<ClassLoader, Integer> handles;
+	private final Map<Integer, String> names;
+	private final ReferenceQueue<ClassLoader> queue;
+	private int next;
+
+	/**
+	 * Creates the handles.
+	 */
+	public LoaderHandles() {
+		handles = new WeakHashMap<>();
+		references = new HashMap<>();
+		names = new HashMap<>();
+		queue = new ReferenceQueue<>();
+		next = 1;
+	}
+
+	/**
+	 * Returns the handle of a class loader, assigning a new one on first use.
+	 * @param loader the class loader, {@code null} for the bootstrap loader
+	 * @return the handle
+	 */
+	public synchronized int handle(final ClassLoader loader) {
+		if (loader == null || loader == ClassLoader.getSystemClassLoader()) {
+			return 0;
+		}
+		final Integer existing = handles.get(loader);
+		if (existing != null) {
+			return existing.intValue();
+		}
+		final Integer handle = Integer.valueOf(next++);
+		handles.put(loader, handle);
+		references.put(new WeakReference<>(loader, queue), handle);
+		names.put(handle, (loader.getName() != null ? loader.getName() : loader.getClass().getSimpleName()) + "#" + handle);
+		return handle.intValue();
+	}
+
+	/**
+	 * Returns the handles of the class loaders collected since the last call.
+	 * @return the handles, possibly empty
+	 */
+	public synchronized int[] dead() {
+		final List<Integer> result = new ArrayList<>();
+		for (Reference<? extends ClassLoader> reference = queue.poll(); reference != null; reference = queue.poll()) {
+			final Integer handle = references.remove(reference);
+			if (handle != null) {
+				names.remove(handle);
+				result.add(handle);
+			}
+		}
+		return result.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Returns the name of a class loader still alive: its name, or the simple name of
+	 * its class, followed by the handle, e.g. {@code MyLoader#3}.
+	 * @param handle the handle
+	 * @return the name, or {@code null} for handle {@code 0} and loaders already collected
+	 */
+	public synchronized String name(final int handle) {
+		return names.get(Integer.valueOf(handle));
+	}
+
+	/**
+	 * Returns the number of class loaders with a handle that are still alive.
+	 * @return the number of live loaders
+	 */
+	public synchronized int live() {
+		return references.size();
+	}
+
+}
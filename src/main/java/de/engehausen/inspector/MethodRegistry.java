@@ -0,0 +1,430 @@
+package de.engehausen.inspector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Registry of instrumented methods. Each method gets a numeric id, which
+ * is the only constant the injected probe needs. The counters are held
+ * in pages of primitive arrays indexed by that id, so counting does not
+ * require any lookups.<br>
+ * Optionally, the counts are attributed to a fixed number of groups (e.g.
+ * of threads); the counters of the groups of a method are adjacent in its page.<br>
+ * The registry keeps an estimate of the memory it uses, see {@link #memory()}.<br>
+ * Classes are registered per class loader, identified by a compact handle; the
+ * handle {@code 0} stands for no particular loader. When a loader dies, the entries
+ * of its classes are {@link #retire(int) retired}: their counts are folded into one
+ * compact entry per class name and the entries are dropped.
+ */
+public class MethodRegistry {
+
+	/** pseudo method name of the class-level probe of tiered instrumentation */
+	public static final String CLASS_PROBE = "<class>";
+	/** the number of bits of an id addressing a slot within a page */
+	public static final int PAGE_BITS = 10;
+	/** the number of counters per page */
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+	/** mask to obtain the slot of an id within its page */
+	public static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	// estimates of the memory used, in bytes: a string with its map entry (plus one byte per character),
+	// the references of an id in the lists and entries, and a class entry with its map entry
+	private static final long STRING_BYTES = 80L;
+	private static final long ID_BYTES = 24L;
+	private static final long ENTRY_BYTES = 96L;
+
+	// written only with synchronization, but read by the probes without
+	private volatile AtomicIntegerArray[] pages;
+	private final Map<Key, ClassEntry> classes;
+	private final Map<String, RetiredClass> retired;
+	private final Map<String, String> names;
+	private final List<String> classOfId;
+	private final List<String> methodOfId;
+	private final int groups;
+	private int size;
+	private long memory;
+
+	/**
+	 * Creates an empty registry without groups.
+	 */
+	public MethodRegistry() {
+		this(1);
+	}
+
+	/**
+	 * Creates an empty registry.
+	 * @param groups the number of groups to attribute the counts to
+	 */
+	public MethodRegistry(final int groups) {
+		if (groups < 1) {
+			throw new IllegalArgumentException("at least one group required");
+		}
+		this.groups = groups;
+		pages = new AtomicIntegerArray[0];
+		classes = new HashMap<>();
+		retired = new HashMap<>();
+		names = new HashMap<>();
+		classOfId = new ArrayList<>();
+		methodOfId = new ArrayList<>();
+	}
+
+	/**
+	 * Registers the methods of a class without particular loader. Methods already
+	 * known for the class keep their ids.
+	 * @param className the name of the class
+	 * @param methods the methods (name and signature)
+	 * @return the ids of the methods, in the order of the input
+	 */
+	public int[] register(final String className, final List<String> methods) {
+		return register(0, className, methods);
+	}
+
+	/**
+	 * Registers the methods of a class of a loader. Methods already known for
+	 * the class of the loader keep their ids.
+	 * @param loader the handle of the class loader
+	 * @param className the name of the class
+	 * @param methods the methods (name and signature)
+	 * @return the ids of the methods, in the order of the input
+	 */
+	public synchronized int[] register(final int loader, final String className, final List<String> methods) {
+		final ClassEntry existing = classes.get(new Key(loader, className));
+		final List<String> allMethods = new ArrayList<>();
+		final int[] ids = new int[methods.size()];
+		int[] allIds = new int[0];
+		if (existing != null) {
+			allMethods.addAll(Arrays.asList(existing.methods()));
+			allIds = existing.ids();
+		} else {
+			memory += ENTRY_BYTES;
+		}
+		for (int i = 0; i < ids.length; i++) {
+			final String method = intern(methods.get(i));
+			final int known = allMethods.indexOf(method);
+			if (known >= 0) {
+				ids[i] = allIds[known];
+			} else {
+				ids[i] = allocate(intern(className), method);
+				allMethods.add(method);
+				allIds = Arrays.copyOf(allIds, allIds.length + 1);
+				allIds[allIds.length - 1] = ids[i];
+			}
+		}
+		classes.put(new Key(loader, intern(className)), new ClassEntry(
+			intern(className),
+			allMethods.toArray(new String[allMethods.size()]),
+			allIds,
+			existing != null ? existing.notInstrumented() : null,
+			loader));
+		return ids;
+	}
+
+	/**
+	 * Records the methods of a class without particular loader that were deliberately not instrumented.
+	 * @param className the name of the class
+	 * @param methods the methods (name and signature) that are not instrumented
+	 */
+	public void notInstrumented(final String className, final List<String> methods) {
+		notInstrumented(0, className, methods);
+	}
+
+	/**
+	 * Records the methods of a class of a loader that were deliberately not instrumented.
+	 * @param loader the handle of the class loader
+	 * @param className the name of the class
+	 * @param methods the methods (name and signature) that are not instrumented
+	 */
+	public synchronized void notInstrumented(final int loader, final String className, final List<String> methods) {
+		final Key key = new Key(loader, intern(className));
+		final ClassEntry existing = classes.get(key);
+		final List<String> interned = methods.stream().map(this::intern).toList();
+		if (existing == null) {
+			memory += ENTRY_BYTES;
+		}
+		classes.put(key, existing != null ?
+			new ClassEntry(existing.name(), existing.methods(), existing.ids(), interned, loader) :
+			new ClassEntry(key.name(), new String[0], new int[0], interned, loader));
+	}
+
+	/**
+	 * Retires the classes of a loader that died. The counts of its classes are
+	 * added to the retired counts of their class names, see {@link #retired()},
+	 * and the entries are dropped. The counters are kept, so that they still
+	 * grow monotonically for the readers of all counters.
+	 * @param loader the handle of the class loader
+	 * @return the number of classes retired
+	 */
+	public synchronized int retire(final int loader) {
+		int result = 0;
+		for (final Iterator<ClassEntry> iterator = classes.values().iterator(); iterator.hasNext(); ) {
+			final ClassEntry entry = iterator.next();
+			if (entry.loader() == loader) {
+				final RetiredClass existing = retired.get(entry.name());
+				final List<String> methods = existing != null ? new ArrayList<>(Arrays.asList(existing.methods())) : new ArrayList<>();
+				int[] counts = existing != null ? existing.counts() : new int[0];
+				for (int i = 0; i < entry.ids().length; i++) {
+					int index = methods.indexOf(entry.methods()[i]);
+					if (index < 0) {
+						index = methods.size();
+						methods.add(entry.methods()[i]);
+						counts = Arrays.copyOf(counts, index + 1);
+					}
+					counts[index] += count(entry.ids()[i]);
+				}
+				if (existing == null) {
+					memory += ENTRY_BYTES;
+				}
+				retired.put(entry.name(), new RetiredClass(entry.name(), methods.toArray(new String[methods.size()]), counts));
+				iterator.remove();
+				memory -= ENTRY_BYTES;
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the retired counts of the classes of loaders that died.
+	 * @return the retired classes, one per class name
+	 */
+	public synchronized List<RetiredClass> retired() {
+		return new ArrayList<>(retired.values());
+	}
+
+	/**
+	 * Restores the classes and method ids of another registry, e.g. the one used
+	 * to instrument classes ahead of time. The registry must be empty.
+	 * @param entries the class entries of the other registry
+	 */
+	public synchronized void restore(final List<ClassEntry> entries) {
+		if (size > 0) {
+			throw new IllegalStateException("registry is not empty");
+		}
+		final int count = entries.stream().mapToInt(entry -> entry.ids().length).sum();
+		final String[] classNames = new String[count];
+		final String[] methods = new String[count];
+		for (final ClassEntry entry : entries) {
+			final String className = intern(entry.name());
+			final String[] interned = new String[entry.methods().length];
+			for (int i = 0; i < interned.length; i++) {
+				interned[i] = intern(entry.methods()[i]);
+				classNames[entry.ids()[i]] = className;
+				methods[entry.ids()[i]] = interned[i];
+			}
+			memory += ENTRY_BYTES;
+			classes.put(new Key(entry.loader(), className), new ClassEntry(
+				className,
+				interned,
+				entry.ids(),
+				entry.notInstrumented() != null ? entry.notInstrumented().stream().map(this::intern).toList() : null,
+				entry.loader()));
+		}
+		for (int id = 0; id < count; id++) {
+			allocate(classNames[id], methods[id]);
+		}
+	}
+
+	/**
+	 * Checks whether the given class without particular loader is known to the registry.
+	 * @param className the name of the class
+	 * @return {@code true} if methods of the class were registered
+	 */
+	public synchronized boolean contains(final String className) {
+		return classes.containsKey(new Key(0, className));
+	}
+
+	/**
+	 * Returns a snapshot of all registered classes.
+	 * @return a list of the class entries
+	 */
+	public synchronized List<ClassEntry> classes() {
+		return new ArrayList<>(classes.values());
+	}
+
+	/**
+	 * Returns the number of registered methods.
+	 * @return the number of registered methods
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the name of the class of the given method id.
+	 * @param id the method id
+	 * @return the class name
+	 */
+	public synchronized String className(final int id) {
+		return classOfId.get(id);
+	}
+
+	/**
+	 * Returns the name and signature of the method with the given id.
+	 * @param id the method id
+	 * @return the method name and signature
+	 */
+	public synchronized String method(final int id) {
+		return methodOfId.get(id);
+	}
+
+	/**
+	 * Returns the registered methods of a class without particular loader.
+	 * @param className the name of the class
+	 * @return the entry of the class, or {@code null} if the class is not registered
+	 */
+	public ClassEntry entry(final String className) {
+		return entry(0, className);
+	}
+
+	/**
+	 * Returns the registered methods of a class of a loader.
+	 * @param loader the handle of the class loader
+	 * @param className the name of the class
+	 * @return the entry of the class, or {@code null} if the class is not registered
+	 */
+	public synchronized ClassEntry entry(final int loader, final String className) {
+		return classes.get(new Key(loader, className));
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the registry: the names, the
+	 * ids and the pages of counters.
+	 * @return the estimated memory in bytes
+	 */
+	public synchronized long memory() {
+		return memory;
+	}
+
+	/**
+	 * Returns the number of groups the counts are attributed to.
+	 * @return the number of groups
+	 */
+	public int groups() {
+		return groups;
+	}
+
+	/**
+	 * Increments the counter for the given method id (in the first group).
+	 * @param id the method id
+	 * @return the new count of the group
+	 */
+	public int increment(final int id) {
+		return pages[id >>> PAGE_BITS].incrementAndGet((id & PAGE_MASK) * groups);
+	}
+
+	/**
+	 * Increments the counter of a group for the given method id.
+	 * @param id the method id
+	 * @param group the index of the group
+	 * @return the new count of the group
+	 */
+	public int increment(final int id, final int group) {
+		return pages[id >>> PAGE_BITS].incrementAndGet((id & PAGE_MASK) * groups + group);
+	}
+
+	/**
+	 * Adds to the counter for the given method id (in the first group).
+	 * @param id the method id
+	 * @param delta the value to add
+	 */
+	public void add(final int id, final int delta) {
+		pages[id >>> PAGE_BITS].addAndGet((id & PAGE_MASK) * groups, delta);
+	}
+
+	/**
+	 * Adds to the counter of a group for the given method id.
+	 * @param id the method id
+	 * @param group the index of the group
+	 * @param delta the value to add
+	 */
+	public void add(final int id, final int group, final int delta) {
+		pages[id >>> PAGE_BITS].addAndGet((id & PAGE_MASK) * groups + group, delta);
+	}
+
+	/**
+	 * Returns the current count for the given method id, summed over all groups.
+	 * @param id the method id
+	 * @return the current count
+	 */
+	public int count(final int id) {
+		final AtomicIntegerArray page = pages[id >>> PAGE_BITS];
+		final int start = (id & PAGE_MASK) * groups;
+		int result = 0;
+		for (int group = 0; group < groups; group++) {
+			result += page.get(start + group);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the current count of a group for the given method id.
+	 * @param id the method id
+	 * @param group the index of the group
+	 * @return the current count of the group
+	 */
+	public int count(final int id, final int group) {
+		return pages[id >>> PAGE_BITS].get((id & PAGE_MASK) * groups + group);
+	}
+
+	/**
+	 * Allocates a new id, adding a page of counters if needed.
+	 * @param className the name of the class of the method
+	 * @param method the method name and signature
+	 * @return the new id
+	 */
+	private int allocate(final String className, final String method) {
+		final int id = size++;
+		classOfId.add(className);
+		methodOfId.add(method);
+		memory += ID_BYTES;
+		final int page = id >>> PAGE_BITS;
+		if (page >= pages.length) {
+			final AtomicIntegerArray[] next = Arrays.copyOf(pages, page + 1);
+			next[page] = new AtomicIntegerArray(PAGE_SIZE * groups);
+			pages = next;
+			memory += (long) PAGE_SIZE * groups * Integer.BYTES;
+		}
+		return id;
+	}
+
+	private String intern(final String str) {
+		final String existing = names.get(str);
+		if (existing != null) {
+			return existing;
+		}
+		names.put(str, str);
+		memory += STRING_BYTES + str.length();
+		return str;
+	}
+
+	/**
+	 * The registered methods of a class.
+	 * @param name the name of the class
+	 * @param methods the methods (name and signature) of the class
+	 * @param ids the ids of the methods, parallel to {@code methods}
+	 * @param notInstrumented the methods that were deliberately not instrumented (may be {@code null})
+	 * @param loader the handle of the class loader, {@code 0} for no particular loader
+	 */
+	public record ClassEntry(String name, String[] methods, int[] ids, List<String> notInstrumented, int loader) {}
+
+	/**
+	 * The counts of a class of loaders that died.
+	 * @param name the name of the class
+	 * @param methods the methods (name and signature) of the class
+	 * @param counts the counts of the methods, parallel to {@code methods}
+	 */
+	public record RetiredClass(String name, String[] methods, int[] counts) {}
+
+	/**
+	 * The key of a class.
+	 * @param loader the handle of the class loader, {@code 0} for no particular loader
+	 * @param name the name of the class
+	 */
+	public record Key(int loader, String name) {}
+
+}
@@ -0,0 +1,160 @@
+package de.engehausen.inspector;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.Opcode;
+
+/**
+ * Decides which methods of a class are instrumented. Apart from abstract
+ * methods, methods can be skipped because their bytecode is too small,
+ * because they are synthetic or bridge methods (this includes lambda bodies)
+ * or because they are simple field accessors. Methods can also be filtered
+ * by regular expressions of their name and signature, e.g. {@code toString\(\).*}.
+ */
+public class MethodSelector {
+
+	/** reason for methods that have no code */
+	public static final String REASON_ABSTRACT = "abstract";
+	/** reason for methods with less bytecode than the configured minimum */
+	public static final String REASON_SIZE = "size";
+	/** reason for synthetic or bridge methods */
+	public static final String REASON_SYNTHETIC = "synthetic";
+	/** reason for getters and setters */
+	public static final String REASON_ACCESSOR = "accessor";
+	/** reason for methods excluded or not included by the method filters */
+	public static final String REASON_FILTERED = "filtered";
+
+	protected final int minMethodSize;
+	protected final boolean skipSynthetic;
+	protected final boolean skipAccessors;
+	protected final Pattern excludes;
+	protected final Pattern includes;
+
+	/**
+	 * Creates the selector without method filters.
+	 * @param minMethodSize the minimum bytecode length of a method to be instrumented
+	 * @param skipSynthetic {@code true} to skip synthetic and bridge methods
+	 * @param skipAccessors {@code true} to skip getters and setters
+	 */
+	public MethodSelector(final int minMethodSize, final boolean skipSynthetic, final boolean skipAccessors) {
+		this(minMethodSize, skipSynthetic, skipAccessors, null, null);
+	}
+
+	/**
+	 * Creates the selector.
+	 * @param minMethodSize the minimum bytecode length of a method to be instrumented
+	 * @param skipSynthetic {@code true} to skip synthetic and bridge methods
+	 * @param skipAccessors {@code true} to skip getters and setters
+	 * @param excludes regular expressions of the name and signature of methods to skip (may be {@code null})
+	 * @param includes regular expressions of the name and signature of methods to instrument; if given,
+	 * other methods are skipped (may be {@code null})
+	 */
+	public MethodSelector(
+		final int minMethodSize,
+		final boolean skipSynthetic,
+		final boolean skipAccessors,
+		final List<String> excludes,
+		final List<String> includes) {
+		this.minMethodSize = minMethodSize;
+		this.skipSynthetic = skipSynthetic;
+		this.skipAccessors = skipAccessors;
+		this.excludes = pattern(excludes);
+		this.includes = pattern(includes);
+	}
+
+	/**
+	 * Checks whether the given method is to be instrumented.
+	 * @param method the method to check
+	 * @return {@code null} if the method is to be instrumented, otherwise
+	 * the reason why it is skipped (one of the {@code REASON_...} constants)
+	 */
+	public String skipReason(final CtMethod method) {
+		final CodeAttribute code = method.getMethodInfo().getCodeAttribute();
+		if (Modifier.isAbstract(method.getModifiers()) || code == null) {
+			return REASON_ABSTRACT;
+		}
+		if (excludes != null || includes != null) {
+			final String name = method.getName() + method.getSignature();
+			if ((excludes != null && excludes.matcher(name).matches()) ||
+				(includes != null && !includes.matcher(name).matches())) {
+				return REASON_FILTERED;
+			}
+		}
+		if (skipSynthetic && (method.getMethodInfo().getAccessFlags() & (AccessFlag.SYNTHETIC | AccessFlag.BRIDGE)) != 0) {
+			return REASON_SYNTHETIC;
+		}
+		if (code.getCodeLength() < minMethodSize) {
+			return REASON_SIZE;
+		}
+		if (skipAccessors && accessor(code, Modifier.isStatic(method.getModifiers()))) {
+			return REASON_ACCESSOR;
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether the code has the shape of a getter or setter, that is
+	 * it only loads a field and returns it, or only stores its single argument
+	 * in a field.
+	 * @param code the code of the method
+	 * @param isStatic {@code true} if the method is static
+	 * @return {@code true} if the code is an accessor
+	 */
+	protected boolean accessor(final CodeAttribute code, final boolean isStatic) {
+		final int[] ops = new int[4];
+		int count = 0;
+		final CodeIterator iterator = code.iterator();
+		try {
+			while (iterator.hasNext()) {
+				if (count == ops.length) {
+					return false;
+				}
+				ops[count++] = iterator.byteAt(iterator.next());
+			}
+		} catch (BadBytecode e) {
+			return false;
+		}
+		if (isStatic) {
+			return (count == 2 && ops[0] == Opcode.GETSTATIC && returnsValue(ops[1])) ||
+				(count == 3 && loads(ops[0], 0) && ops[1] == Opcode.PUTSTATIC && ops[2] == Opcode.RETURN);
+		}
+		return (count == 3 && ops[0] == Opcode.ALOAD_0 && ops[1] == Opcode.GETFIELD && returnsValue(ops[2])) ||
+			(count == 4 && ops[0] == Opcode.ALOAD_0 && loads(ops[1], 1) && ops[2] == Opcode.PUTFIELD && ops[3] == Opcode.RETURN);
+	}
+
+	/**
+	 * Combines regular expressions into a single pattern matching any of them.
+	 * @param regexs the regular expressions
+	 * @return the pattern, or {@code null} if there are no expressions
+	 */
+	protected static Pattern pattern(final List<String> regexs) {
+		if (regexs == null || regexs.isEmpty()) {
+			return null;
+		}
+		return Pattern.compile(regexs
+			.stream()
+			.map("(?:%s)"::formatted)
+			.collect(Collectors.joining("|")));
+	}
+
+	private static boolean returnsValue(final int op) {
+		return op >= Opcode.IRETURN && op <= Opcode.ARETURN;
+	}
+
+	private static boolean loads(final int op, final int slot) {
+		return op == Opcode.ILOAD_0 + slot ||
+			op == Opcode.LLOAD_0 + slot ||
+			op == Opcode.FLOAD_0 + slot ||
+			op == Opcode.DLOAD_0 + slot ||
+			op == Opcode.ALOAD_0 + slot;
+	}
+
+}
@@ -0,0 +1,226 @@
+package de.engehausen.inspector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import de.engehausen.inspector.data.ProbeSwitch;
+
+/**
+ * <p>Bounds the overhead of the probes. The call rates of the methods are read
+ * periodically; a method exceeding the calls-per-second budget is switched to
+ * a sampled probe, which counts only one of {@code sampling} calls on average
+ * (and adds {@code sampling} to the counter then). If the estimated rate of a
+ * sampled method exceeds the budget by the sampling factor, its probe is removed.</p>
+ * <p>The switches are applied by retransforming the class with a {@link ClassUpgrader};
+ * the {@link Transformer} asks for the {@link #mode(int)} of each method. Generated
+ * classes counted under a mapped name are retransformed by their own names; if no class
+ * of a name can be retransformed (e.g. lambdas), the switch is recorded as skipped and the
+ * method stays fully counted. Class-level probes of tiered instrumentation are not governed.</p>
+ */
+public class OverheadGovernor {
+
+	/** mode of a method counted by sampling */
+	public static final String MODE_SAMPLED = "sampled";
+	/** mode of a method not counted anymore */
+	public static final String MODE_REMOVED = "removed";
+	/** mode of a switch not made because no class of the method can be retransformed */
+	public static final String MODE_SKIPPED = "skipped";
+
+	protected final MethodRegistry registry;
+	protected final ClassUpgrader upgrader;
+	protected final int maxCallRate;
+	protected final int sampling;
+	protected final long interval;
+	protected final Function<String, Set<String>> classNames;
+	protected final ScheduledExecutorService executor;
+	private final Object ticking;
+	private final Map<Integer, String> modes;
+	private final Set<Integer> skipped;
+	private final List<ProbeSwitch> switches;
+	private int[] previous;
+	private long previousTime;
+
+	/**
+	 * Creates the governor; call {@link #start()} to begin reading the rates.
+	 * @param registry the registry with the counters
+	 * @param upgrader the upgrader used to retransform classes
+	 * @param maxCallRate the budget of calls per second of a method
+	 * @param sampling the sampling factor, e.g. {@code 64} to count one of 64 calls on average
+	 * @param interval the interval in milliseconds between reading the rates
+	 */
+	public OverheadGovernor(final MethodRegistry registry, final ClassUpgrader upgrader, final int maxCallRate, final int sampling, final long interval) {
+		this(registry, upgrader, maxCallRate, sampling, interval, Set::of);
+	}
+
+	/**
+	 * Creates the governor; call {@link #start()} to begin reading the rates.
+	 * @param registry the registry with the counters
+	 * @param upgrader the upgrader used to retransform classes
+	 * @param maxCallRate the budget of calls per second of a method
+	 * @param sampling the sampling factor, e.g. {@code 64} to count one of 64 calls on average
+	 * @param interval the interval in milliseconds between reading the rates
+	 * @param classNames resolves the name a class is counted under to the names of the classes
+	 * counted under it, see {@link ClassInstrumenter#classNames(String)}
+	 */
+	public OverheadGovernor(
+		final MethodRegistry registry,
+		final ClassUpgrader upgrader,
+		final int maxCallRate,
+		final int sampling,
+		final long interval,
+		final Function<String, Set<String>> classNames) {
+		if (maxCallRate < 1 || sampling < 1 || interval < 1) {
+			throw new IllegalArgumentException("rate, sampling and interval must be positive");
+		}
+		this.registry = registry;
+		this.upgrader = upgrader;
+		this.maxCallRate = maxCallRate;
+		this.sampling = sampling;
+		this.interval = interval;
+		this.classNames = classNames;
+		ticking = new Object();
+		modes = new HashMap<>();
+		skipped = new HashSet<>();
+		switches = new ArrayList<>();
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "usage-inspector-governor");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts reading the rates periodically.
+	 */
+	public void start() {
+		tick(System.currentTimeMillis());
+		executor.scheduleWithFixedDelay(() -> tick(System.currentTimeMillis()), interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops reading the rates.
+	 */
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Returns the sampling factor.
+	 * @return the sampling factor
+	 */
+	public int sampling() {
+		return sampling;
+	}
+
+	/**
+	 * Returns the mode of the probe of a method.
+	 * @param id the method id
+	 * @return {@link #MODE_SAMPLED}, {@link #MODE_REMOVED} or {@code null} if the method is fully counted
+	 */
+	public synchronized String mode(final int id) {
+		return modes.get(Integer.valueOf(id));
+	}
+
+	/**
+	 * Returns the switches made so far.
+	 * @return the switches in the order they were made
+	 */
+	public synchronized List<ProbeSwitch> switches() {
+		return new ArrayList<>(switches);
+	}
+
+	/**
+	 * Reads the counters, computes the rates since the last call and
+	 * switches the methods exceeding the budget. The loaded classes are
+	 * looked up once per call and outside of the lock guarding {@link #mode(int)},
+	 * the retransformations are requested after the new modes are set.
+	 * @param now the current time in milliseconds
+	 */
+	protected void tick(final long now) {
+		synchronized (ticking) {
+			final List<Change> changes = changes(now);
+			if (changes.isEmpty()) {
+				return;
+			}
+			final Map<String, Set<String>> names = new HashMap<>();
+			for (final Change change : changes) {
+				names.computeIfAbsent(change.className(), classNames);
+			}
+			final Set<String> candidates = new HashSet<>();
+			names.values().forEach(candidates::addAll);
+			final Set<String> loaded = upgrader.modifiable(candidates);
+			apply(changes, names, loaded, now).forEach(upgrader::request);
+		}
+	}
+
+	private synchronized List<Change> changes(final long now) {
+		final int size = registry.size();
+		final int[] counts = new int[size];
+		for (int id = 0; id < size; id++) {
+			counts[id] = registry.count(id);
+		}
+		final List<Change> result = new ArrayList<>();
+		final long elapsed = now - previousTime;
+		if (previous != null && elapsed > 0) {
+			for (int id = 0; id < size; id++) {
+				final long rate = 1000L * (counts[id] - CounterWindows.count(previous, id)) / elapsed;
+				final String mode = modes.get(Integer.valueOf(id));
+				final String next;
+				if (mode == null && rate > maxCallRate && !skipped.contains(Integer.valueOf(id))) {
+					next = MODE_SAMPLED;
+				} else if (MODE_SAMPLED.equals(mode) && rate > (long) maxCallRate * sampling) {
+					next = MODE_REMOVED;
+				} else {
+					next = null;
+				}
+				if (next != null && !MethodRegistry.CLASS_PROBE.equals(registry.method(id))) {
+					result.add(new Change(id, registry.className(id), next, rate));
+				}
+			}
+		}
+		previous = counts;
+		previousTime = now;
+		return result;
+	}
+
+	private synchronized Set<String> apply(final List<Change> changes, final Map<String, Set<String>> names, final Set<String> loaded, final long now) {
+		final Set<String> requests = new TreeSet<>();
+		for (final Change change : changes) {
+			final Integer id = Integer.valueOf(change.id());
+			final String method = registry.method(change.id());
+			final List<String> classes = names
+				.get(change.className())
+				.stream()
+				.filter(loaded::contains)
+				.toList();
+			if (classes.isEmpty()) {
+				skipped.add(id);
+				switches.add(new ProbeSwitch(change.className(), method, MODE_SKIPPED, change.rate(), now));
+			} else {
+				modes.put(id, change.mode());
+				switches.add(new ProbeSwitch(change.className(), method, change.mode(), change.rate(), now));
+				requests.addAll(classes);
+			}
+		}
+		return requests;
+	}
+
+	/**
+	 * A switch of a method found while reading the rates.
+	 * @param id the method id
+	 * @param className the name the class of the method is counted under
+	 * @param mode the new mode of the method
+	 * @param rate the call rate
+	 */
+	private record Change(int id, String className, String mode, long rate) {}
+
+}
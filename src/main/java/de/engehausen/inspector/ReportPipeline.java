@@ -0,0 +1,195 @@
+package de.engehausen.inspector;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.ServiceLoader.Provider;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.engehausen.inspector.data.Configuration;
+import de.engehausen.inspector.data.Report;
+import de.engehausen.inspector.data.Reporter;
+import de.engehausen.inspector.data.ReporterChain;
+import de.engehausen.inspector.reporters.FileCorrelator;
+import de.engehausen.inspector.reporters.Identity;
+
+/**
+ * Writes a report through one or more {@link ReporterChain}s. The chains
+ * run concurrently. Leading reporters shared by several chains (with the
+ * same meta data) are computed only once, and only when a chain needs them.
+ */
+public class ReportPipeline {
+
+	protected final List<ReporterChain> chains;
+	protected final Map<String, Object> meta;
+	protected final Map<String, Reporter<?>> reporters;
+
+	/**
+	 * Creates the pipeline using the reporters available via the Java service loader.
+	 * @param chains the reporter chains to run
+	 * @param meta the general meta configuration, may be {@code null}
+	 */
+	public ReportPipeline(final List<ReporterChain> chains, final Map<String, Object> meta) {
+		this(chains, meta, ServiceLoader
+			.load(Reporter.class)
+			.stream()
+			.<Reporter<?>>map(Provider::get)
+			.filter(Objects::nonNull)
+			.collect(Collectors.toMap(Reporter::name, reporter -> reporter, (first, second) -> first)));
+	}
+
+	/**
+	 * Creates the pipeline.
+	 * @param chains the reporter chains to run
+	 * @param meta the general meta configuration, may be {@code null}
+	 * @param reporters the known reporters by name
+	 */
+	protected ReportPipeline(final List<ReporterChain> chains, final Map<String, Object> meta, final Map<String, Reporter<?>> reporters) {
+		this.chains = chains;
+		this.meta = meta;
+		this.reporters = reporters;
+		chains
+			.stream()
+			.flatMap(chain -> chain.reporters().stream())
+			.filter(name -> !reporters.containsKey(name))
+			.findFirst()
+			.ifPresent(name -> {
+				throw new IllegalStateException("cannot find reporter '%s'".formatted(name));
+			});
+	}
+
+	/**
+	 * Creates the pipeline for a configuration. If the configuration has no
+	 * {@code reporters}, a single chain of its {@code reporter} (default {@link Identity})
+	 * writing to its {@code out} file is used.
+	 * @param configuration the configuration
+	 * @return the pipeline
+	 */
+	public static ReportPipeline of(final Configuration configuration) {
+		return new ReportPipeline(
+			configuration.reporters() != null && !configuration.reporters().isEmpty() ?
+				configuration.reporters() :
+				List.of(new ReporterChain(
+					List.of(Optional.ofNullable(configuration.reporter()).orElse(Identity.NAME)),
+					configuration.out(),
+					null)),
+			configuration.meta());
+	}
+
+	/**
+	 * Runs all chains for the given report and waits for their completion.
+	 * Problems of a chain are output to {@code System.err}, the other chains
+	 * are not affected.
+	 * @param report the report to write
+	 */
+	public void write(final Report report) {
+		final Map<Stage, CompletableFuture<Object>> results = new ConcurrentHashMap<>();
+		final ExecutorService executor = Executors.newFixedThreadPool(
+			Math.max(1, Math.min(chains.size(), Runtime.getRuntime().availableProcessors())),
+			runnable -> {
+				final Thread thread = new Thread(runnable, "usage-inspector-reporter");
+				thread.setDaemon(true);
+				return thread;
+			});
+		try {
+			CompletableFuture.allOf(chains
+				.stream()
+				.map(chain -> CompletableFuture.runAsync(() -> write(report, chain, results), executor))
+				.toArray(CompletableFuture[]::new)
+			).exceptionally(t -> null).join();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Runs a single chain and writes its output.
+	 * @param report the input report
+	 * @param chain the chain to run
+	 * @param results the shared stage results
+	 */
+	protected void write(final Report report, final ReporterChain chain, final Map<Stage, CompletableFuture<Object>> results) {
+		final Map<String, Object> chainMeta = new HashMap<>();
+		Optional
+			.ofNullable(meta)
+			.ifPresent(chainMeta::putAll);
+		Optional
+			.ofNullable(chain.meta())
+			.ifPresent(chainMeta::putAll);
+		try {
+			final Object result = stage(report, new Stage(chain.reporters(), chainMeta), results);
+			final ObjectMapper mapper = new ObjectMapper().configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+			if (chain.out() == null) {
+				mapper.writeValue(System.err, result);
+			} else {
+				try (final OutputStream out = new FileOutputStream(chain.out())) {
+					mapper.writeValue(out, result);
+				}
+			}
+		} catch (IOException|RuntimeException e) {
+			System.err.println("cannot write report for %s: %s".formatted(chain.reporters(), e.getMessage()));
+			e.printStackTrace(System.err);
+		}
+	}
+
+	/**
+	 * Computes the result of a stage, which is the application of a list of
+	 * reporters to the report. Each stage is computed at most once.
+	 * @param report the input report
+	 * @param stage the stage to compute
+	 * @param results the shared stage results
+	 * @return the result of the last reporter of the stage
+	 */
+	protected Object stage(final Report report, final Stage stage, final Map<Stage, CompletableFuture<Object>> results) {
+		final List<String> names = stage.reporters();
+		if (names.isEmpty()) {
+			return report;
+		}
+		final CompletableFuture<Object> future = new CompletableFuture<>();
+		final CompletableFuture<Object> existing = results.putIfAbsent(stage, future);
+		if (existing != null) {
+			return existing.join();
+		}
+		try {
+			final Object input = stage(report, new Stage(names.subList(0, names.size() - 1), stage.meta()), results);
+			final String name = names.get(names.size() - 1);
+			final Map<String, Object> reporterMeta;
+			if (names.size() > 1 && FileCorrelator.NAME.equals(names.get(names.size() - 2))) {
+				// lets the weight mappers know that the input is correlated already
+				reporterMeta = new HashMap<>(stage.meta());
+				reporterMeta.put(FileCorrelator.KEY_CORRELATED, Boolean.TRUE);
+			} else {
+				reporterMeta = stage.meta();
+			}
+			if (input instanceof final Report previous) {
+				future.complete(reporters.get(name).transform(previous, reporterMeta));
+			} else {
+				throw new IllegalStateException("reporter '%s' requires a report as input".formatted(name));
+			}
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future.join();
+	}
+
+	/**
+	 * A list of reporters applied with given meta data.
+	 * @param reporters the names of the reporters
+	 * @param meta the meta data passed to the reporters
+	 */
+	protected record Stage(List<String> reporters, Map<String, Object> meta) {}
+
+}
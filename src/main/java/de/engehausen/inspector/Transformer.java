@@ -1,27 +1,25 @@
 package de.engehausen.inspector;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
+import java.lang.instrument.Instrumentation;
 import java.security.ProtectionDomain;
-import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.ServiceLoader;
-import java.util.ServiceLoader.Provider;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -29,17 +27,13 @@ import java.util.stream.Stream;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import de.engehausen.inspector.data.ClassInfo;
 import de.engehausen.inspector.data.Configuration;
 import de.engehausen.inspector.data.Report;
-import de.engehausen.inspector.data.Reporter;
-import de.engehausen.inspector.reporters.Identity;
+import de.engehausen.inspector.data.UsageTable;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
-import javassist.CtMethod;
 import javassist.LoaderClassPath;
-import javassist.Modifier;
 import javassist.NotFoundException;
 import javassist.bytecode.Descriptor;
 
@@ -49,18 +43,45 @@ import javassist.bytecode.Descriptor;
  */
 public class Transformer implements ClassFileTransformer {
 
-	protected final Map<String, Map<String, AtomicInteger>> classesUsed;
+	protected final MethodRegistry registry;
+	protected final FirstCalls firstCalls;
+	protected final String[] groupNames;
+	protected final Pattern[] groupPatterns;
+	protected final ThreadLocal<ThreadContext> threadContext;
 	protected final Set<ClassLoader> loadersUsed;
 	protected final ClassPool classPool;
 	protected final List<String> issues;
 
-	protected final Pattern excludes;
-	protected final Pattern includes;
-	protected final OutputStream out;
+	protected final ClassInstrumenter instrumenter;
 	protected final boolean reportIssues;
 	protected final boolean details; 
-	protected final Reporter<?> reporter;
+	protected final ReportPipeline pipeline;
+	protected final CounterPusher pusher;
+	protected final EventPublisher publisher;
+	protected final CounterWindows windows;
 	protected final Map<String, Object> meta;
+	protected final ClassUpgrader upgrader;
+	protected final OverheadGovernor governor;
+	protected final boolean tiered;
+	protected final Set<MethodRegistry.Key> upgraded;
+	protected final Set<Integer> requested;
+	protected final boolean transforming;
+	protected final LoaderHandles loaderHandles;
+	protected int unloaded;
+
+	/** {@code merge} - classes of the same name loaded by different class loaders are counted together */
+	public static final String LOADERS_MERGE = "merge";
+	/** {@code split} - classes of the same name loaded by different class loaders are counted per loader */
+	public static final String LOADERS_SPLIT = "split";
+	/** name of the group of threads not matching any configured thread group */
+	public static final String GROUP_OTHER = "other";
+
+	private static final String UNLOADED = "unloaded";
+	private static final Integer DEFAULT_PUSH_INTERVAL = Integer.valueOf(10000);
+	private static final Integer DEFAULT_WINDOW_INTERVAL = Integer.valueOf(60000);
+	private static final Integer DEFAULT_SAMPLING = Integer.valueOf(64);
+	private static final Integer DEFAULT_GOVERNOR_INTERVAL = Integer.valueOf(1000);
+	private static final Integer DEFAULT_JFR_TOP_METHODS = Integer.valueOf(10);
 
 	private static Transformer INSTANCE;
 
@@ -73,71 +94,108 @@ public class Transformer implements ClassFileTransformer {
 	 * arguments specified as a key value pair separated by {@code =}. Key value pairs
 	 * must be separated by {@code :}. Example configurations: a) {@code -javaagent:..jar=config=myjconfig.json},
 	 * b) {@code -javaagent:..jar=excludes=com+,org+:out=/tmp/result.json}.
+	 * @param instrumentation the instrumentation instance, used to upgrade classes
+	 * with tiered instrumentation and to change probes by the governor; may be {@code null}
+	 * @throws UncheckedIOException if the configuration or the method manifest cannot be read
 	 */
-	protected Transformer(final String agentArgs) {
+	protected Transformer(final String agentArgs, final Instrumentation instrumentation) {
 		// since the instrumented classes are determine here once,
-		// these to collections are not created thread-safe
-		classesUsed = new HashMap<>();
-		loadersUsed = new HashSet<>();
+		// these collections are not created thread-safe; the loaders must not be kept alive
+		loadersUsed = Collections.newSetFromMap(new WeakHashMap<>());
 		// this will be accessed only with synchronization
 		issues = new ArrayList<>();
 		classPool = ClassPool.getDefault();
 		classPool.childFirstLookup = true;
-		final Map<String, String> args = Stream
-			.of((agentArgs != null ? agentArgs : "").split(":"))
-			.filter(str -> str != null && str.indexOf('=') > 0)
-			.map(keyValue -> keyValue.split("="))
-			.collect(Collectors.toMap(arr -> arr[0], arr -> arr[1]));
-		final Configuration configuration = Optional
-			.ofNullable(args.get(Configuration.ARG_CONFIG))
-			.map(fileName -> {
-				try {
-					return new ObjectMapper().readValue(new File(fileName), Configuration.class);
-				} catch (IOException e) {
-					System.err.println(e.getMessage());
-					System.exit(1);
-				}
-				return null;
-			}).or(() -> Optional.of(new Configuration(
-				toList(args.get(Configuration.ARG_EXCLUDES)),
-				toList(args.get(Configuration.ARG_EXCLUDES)),
-				Boolean.parseBoolean(args.getOrDefault(Configuration.ARG_DETAILS, Boolean.TRUE.toString())),
-				args.get(Configuration.ARG_OUT),
-				args.get(Configuration.ARG_REPORT_ISSUES),
-				args.get(Configuration.ARG_REPORTER),
-				toMap(args.get(Configuration.ARG_META)))
-			))
-			.get();
-		excludes = getPattern(configuration.excludes(), "^$");
-		includes = getPattern(configuration.includes(), ".+");
+		final Configuration configuration = configuration(agentArgs);
+		if (configuration.threadGroups() != null && !configuration.threadGroups().isEmpty()) {
+			groupNames = Stream
+				.concat(configuration.threadGroups().keySet().stream(), Stream.of(GROUP_OTHER))
+				.toArray(String[]::new);
+			groupPatterns = configuration
+				.threadGroups()
+				.values()
+				.stream()
+				.map(Pattern::compile)
+				.toArray(Pattern[]::new);
+			// the group of a thread is resolved on its first counted call
+			threadContext = ThreadLocal.withInitial(() -> new ThreadContext(group(Thread.currentThread().getName())));
+		} else {
+			groupNames = null;
+			groupPatterns = null;
+			threadContext = null;
+		}
+		registry = new MethodRegistry(groupNames != null ? groupNames.length : 1);
+		firstCalls = Boolean.TRUE.equals(configuration.timeline()) ? new FirstCalls() : null;
+		if (configuration.loaders() != null && !LOADERS_MERGE.equals(configuration.loaders()) && !LOADERS_SPLIT.equals(configuration.loaders())) {
+			recordIssue("unknown loaders mode '%s', using %s".formatted(configuration.loaders(), LOADERS_MERGE));
+		}
+		loaderHandles = LOADERS_SPLIT.equals(configuration.loaders()) ? new LoaderHandles() : null;
 		details = configuration.details();
-		out = Optional
-			.ofNullable(configuration.out())
-			.map(fileName -> {
-				try {
-					return (OutputStream) new FileOutputStream(fileName);
-				} catch (FileNotFoundException e) {
-					return (OutputStream) System.err;
-				}
-			})
-			.orElse(System.err);
 		reportIssues = Optional
 			.ofNullable(configuration.reportIssues())
 			.map(Boolean::parseBoolean)
 			.orElse(Boolean.TRUE)
 			.booleanValue();
 		meta = configuration.meta();
-		final String reporterName = Optional
-			.ofNullable(configuration.reporter())
-			.orElse(Identity.NAME);
-		reporter = ServiceLoader
-			.load(Reporter.class)
-			.stream()
-			.map(Provider::get)
-			.filter(Objects::nonNull)
-			.filter(candidate -> reporterName.equals(candidate.name()))
-			.findFirst()
-			.orElseThrow(() -> new IllegalStateException("cannot find reporter '%s'".formatted(reporterName)));
+		instrumenter = new ClassInstrumenter(configuration, registry, this::recordIssue, this::memory, this::mode);
+		pipeline = ReportPipeline.of(configuration);
+		pusher = Optional
+			.ofNullable(configuration.collector())
+			.map(collector -> new CounterPusher(registry, collector))
+			.orElse(null);
+		if (pusher != null) {
+			pusher.start(Optional.ofNullable(configuration.pushInterval()).orElse(DEFAULT_PUSH_INTERVAL).longValue());
+		}
+		publisher = Optional
+			.ofNullable(configuration.jfrInterval())
+			.map(interval -> publisher(
+				Optional.ofNullable(configuration.jfrTopMethods()).orElse(DEFAULT_JFR_TOP_METHODS).intValue(),
+				interval.longValue()))
+			.orElse(null);
+		windows = Optional
+			.ofNullable(configuration.windows())
+			.map(count -> new CounterWindows(
+				registry,
+				count.intValue(),
+				Optional.ofNullable(configuration.windowInterval()).orElse(DEFAULT_WINDOW_INTERVAL).longValue()))
+			.orElse(null);
+		if (windows != null) {
+			windows.start();
+		}
+		upgraded = new HashSet<>();
+		requested = ConcurrentHashMap.newKeySet();
+		transforming = configuration.manifest() == null;
+		if (!transforming) {
+			try {
+				registry.restore(new ObjectMapper().readValue(new File(configuration.manifest()), new TypeReference<List<MethodRegistry.ClassEntry>>() {}));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		if (transforming && (Boolean.TRUE.equals(configuration.tiered()) || configuration.maxCallRate() != null)) {
+			if (instrumentation != null && instrumentation.isRetransformClassesSupported()) {
+				upgrader = new ClassUpgrader(instrumentation, this::recordIssue);
+				upgrader.start();
+			} else {
+				upgrader = null;
+				recordIssue("retransformation not supported, tiered instrumentation and governor disabled");
+			}
+		} else {
+			upgrader = null;
+		}
+		tiered = upgrader != null && Boolean.TRUE.equals(configuration.tiered());
+		governor = upgrader != null && configuration.maxCallRate() != null ?
+			new OverheadGovernor(
+				registry,
+				upgrader,
+				configuration.maxCallRate().intValue(),
+				Optional.ofNullable(configuration.sampling()).orElse(DEFAULT_SAMPLING).intValue(),
+				Optional.ofNullable(configuration.governorInterval()).orElse(DEFAULT_GOVERNOR_INTERVAL).longValue(),
+				instrumenter::classNames) :
+			null;
+		if (governor != null) {
+			governor.start();
+		}
 		INSTANCE = this;
 	}
 
@@ -152,28 +210,213 @@ public class Transformer implements ClassFileTransformer {
 		final Class<?> classBeingRedefined,
 		final ProtectionDomain protectionDomain,
 		final byte[] classfileBuffer) throws IllegalClassFormatException {
-		if (untransformable(className) || reject(className)) {
+		if (instrumenter.untransformable(className) || instrumenter.reject(className)) {
+			return classfileBuffer;
+		}
+		final String countedName = instrumenter.countedName(className);
+		if (countedName == null) {
 			return classfileBuffer;
 		}
-		var counters = new ConcurrentHashMap<String, AtomicInteger>();
-		if (classesUsed.put(className, counters) != null) {
+		final int handle;
+		if (loaderHandles != null) {
+			retireLoaders();
+			handle = loaderHandles.handle(loader);
+		} else {
+			handle = 0;
+		}
+		if (!countedName.equals(className)) {
+			// generated classes are not upgraded, they are read from the classfile
+			return monitorMethods(className, countedName, classfileBuffer, handle);
+		}
+		// classes of the same name of different loaders share their counters by design, unless counted per loader
+		if (loaderHandles != null && classBeingRedefined == null && registry.entry(handle, className) != null) {
 			recordIssue("duplicated class %s".formatted(className));
 		}
 		if (loadersUsed.add(loader)) {
 			classPool.insertClassPath(new LoaderClassPath(loader));
 		}
-		return monitorMethods(className, counters, classfileBuffer);
+		if (tiered) {
+			// classes of the same name of different loaders are upgraded individually if counted per loader
+			final MethodRegistry.Key key = new MethodRegistry.Key(handle, className);
+			if (classBeingRedefined == null && !upgraded.contains(key)) {
+				return monitorClass(className, classfileBuffer, handle);
+			}
+			upgraded.add(key);
+		}
+		return monitorMethods(className, className, classfileBuffer, handle);
 	}
 
-	// counts method invocations
-	public static void count(final String className, final String method) {
-		Optional
-			.ofNullable(instance().classesUsed.get(className))
-			.ifPresent(counters -> 
-				Optional
-					.ofNullable(counters.get(method))
-					.ifPresent(counter -> counter.incrementAndGet())
-			);
+	/**
+	 * Retires the classes of the class loaders collected since the last call,
+	 * if classes are counted per loader.
+	 */
+	protected void retireLoaders() {
+		if (loaderHandles != null) {
+			for (final int handle : loaderHandles.dead()) {
+				registry.retire(handle);
+				synchronized (this) {
+					unloaded++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the name a registered class is reported under: classes of a class
+	 * loader other than the system class loader are suffixed with the name of the
+	 * loader if classes are counted per loader, e.g. {@code com/acme/Plugin@PluginLoader#1}.
+	 * @param entry the registered class
+	 * @return the name to report
+	 */
+	protected String reportedName(final MethodRegistry.ClassEntry entry) {
+		if (loaderHandles == null || entry.loader() == 0) {
+			return entry.name();
+		}
+		return entry.name() + "@" + Optional
+			.ofNullable(loaderHandles.name(entry.loader()))
+			.orElse(UNLOADED);
+	}
+
+	/**
+	 * Creates and starts the publisher of Java Flight Recorder events.
+	 * @param topMethods the number of methods called most to publish per batch
+	 * @param interval the interval between batches in milliseconds
+	 * @return the publisher, or {@code null} if the VM does not provide the flight recorder
+	 */
+	protected EventPublisher publisher(final int topMethods, final long interval) {
+		try {
+			final EventPublisher result = new EventPublisher(registry, topMethods);
+			result.start(interval);
+			return result;
+		} catch (LinkageError e) {
+			recordIssue("flight recorder not available, events disabled: %s=%s".formatted(e.getClass().getName(), e.getMessage()));
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether classes are instrumented at runtime. This is not the case
+	 * if the classes were instrumented ahead of time and a method manifest is used.
+	 * @return {@code true} if the transformer is to be registered
+	 */
+	public boolean transforming() {
+		return transforming;
+	}
+
+	/**
+	 * Returns whether classes get a class-level probe first and are upgraded
+	 * to method-level counting when used.
+	 * @return {@code true} if tiered instrumentation is active
+	 */
+	public boolean tiered() {
+		return tiered;
+	}
+
+	/**
+	 * Returns whether classes may be retransformed, which requires the
+	 * transformer to be registered as capable of retransformation.
+	 * @return {@code true} if tiered instrumentation or the governor is active
+	 */
+	public boolean retransforming() {
+		return upgrader != null;
+	}
+
+	/**
+	 * Counts a method invocation. This is the probe injected into the
+	 * instrumented methods; it is kept minimal in bytecode (one constant
+	 * and a static call, four to six bytes depending on the id) so that it
+	 * grows methods as little as possible. Small methods can still cross an
+	 * inlining threshold, which is reported with {@link Configuration#ARG_INLINING}.
+	 * @param id the id of the method as assigned by the {@link MethodRegistry}
+	 */
+	public static void count(final int id) {
+		INSTANCE.increment(id);
+	}
+
+	/**
+	 * Counts a method invocation and records the first one. This is the probe
+	 * of methods if the startup timeline is recorded; after the first call, it
+	 * only adds a read of the first call's slot.
+	 * @param id the id of the method as assigned by the {@link MethodRegistry}
+	 */
+	public static void countFirst(final int id) {
+		final Transformer transformer = INSTANCE;
+		transformer.increment(id);
+		if (transformer.firstCalls != null) {
+			transformer.firstCalls.record(id);
+		}
+	}
+
+	/**
+	 * Counts a method invocation by sampling. This is the probe of methods
+	 * degraded by the {@link OverheadGovernor}: on average, one of {@code sampling}
+	 * calls is counted, adding {@code sampling} to the counter.
+	 * @param id the id of the method as assigned by the {@link MethodRegistry}
+	 */
+	public static void countSampled(final int id) {
+		final Transformer transformer = INSTANCE;
+		final int sampling = transformer.governor.sampling();
+		if (ThreadLocalRandom.current().nextInt(sampling) == 0) {
+			if (transformer.threadContext == null) {
+				transformer.registry.add(id, sampling);
+			} else {
+				transformer.registry.add(id, transformer.threadContext.get().group(), sampling);
+			}
+		}
+	}
+
+	/**
+	 * Waits until the classes requested for an upgrade to method-level counting so
+	 * far are retransformed, e.g. to count the methods of the classes used during a
+	 * warm-up from then on.
+	 * @param timeoutMs the maximum time to wait in milliseconds
+	 * @return {@code true} if the upgrades are done or there is nothing to upgrade
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public static boolean awaitUpgrades(final long timeoutMs) throws InterruptedException {
+		final Transformer transformer = INSTANCE;
+		return transformer == null || transformer.upgrader == null || transformer.upgrader.await(timeoutMs);
+	}
+
+	/**
+	 * Counts the use of a class and requests its upgrade to method-level
+	 * counting on the first use. This is the probe of tiered instrumentation.
+	 * @param id the id of the class-level probe as assigned by the {@link MethodRegistry}
+	 */
+	public static void touch(final int id) {
+		final Transformer transformer = INSTANCE;
+		// the first use per thread group is checked against the ids requested, so that an upgrade is requested once
+		if (transformer.increment(id) == 1 && transformer.requested.add(Integer.valueOf(id))) {
+			transformer.upgrader.request(transformer.registry.className(id));
+		}
+		if (transformer.firstCalls != null) {
+			transformer.firstCalls.record(id);
+		}
+	}
+
+	/**
+	 * Increments the counter of a method; the thread group of the current
+	 * thread is only looked up if thread groups are configured.
+	 * @param id the method id
+	 * @return the new count of the group of the current thread
+	 */
+	protected int increment(final int id) {
+		final ThreadLocal<ThreadContext> context = threadContext;
+		return context == null ? registry.increment(id) : registry.increment(id, context.get().group());
+	}
+
+	/**
+	 * Determines the thread group of a thread.
+	 * @param threadName the name of the thread
+	 * @return the index of the first group whose pattern matches, or the index of {@link #GROUP_OTHER}
+	 */
+	protected int group(final String threadName) {
+		for (int i = 0; i < groupPatterns.length; i++) {
+			if (groupPatterns[i].matcher(threadName).matches()) {
+				return i;
+			}
+		}
+		return groupPatterns.length;
 	}
 
 	/**
@@ -193,25 +436,19 @@ public class Transformer implements ClassFileTransformer {
 	}
 
 	/**
-	 * Returns a regular expression pattern based on a list of
-	 * regular expressions.
-	 * @param regexs a list of regular expressions, may be {@code null}
-	 * @param defaultPattern the default pattern to use of no expressions are given in the first parameter
-	 * @return a pattern to be used for exclusions and inclusions
+	 * Estimates the memory used by the agent for counting: the registry,
+	 * the first calls and the snapshots of the time windows.
+	 * @return the estimated memory in bytes
 	 */
-	protected Pattern getPattern(final List<String> regexs, final String defaultPattern) {
-		if (regexs == null || regexs.isEmpty()) {
-			return Pattern.compile(defaultPattern, Pattern.MULTILINE);
-		}
-		return Pattern.compile(regexs
-			.stream()
-			.reduce("", (current, next) -> {
-				if (current.length() == 0) {
-					return "(%s)".formatted(next);
-				}
-				return "%s|(%s)".formatted(current, next);
-			})
-		);
+	protected long memory() {
+		long result = registry.memory();
+		if (firstCalls != null) {
+			result += firstCalls.memory();
+		}
+		if (windows != null) {
+			result += (long) windows.windows() * registry.size() * Integer.BYTES;
+		}
+		return result;
 	}
 
 	/**
@@ -219,35 +456,52 @@ public class Transformer implements ClassFileTransformer {
 	 * Some standard packages (JDK etc) are always excluded.
 	 * 
 	 * @param className the name of the class to instrument
-	 * @param counters a thread-safe map of counter for method names of the class being instrumented
 	 * @param classfileBuffer the classfile contents
 	 * @return the potentially modified classfile
 	 */
-	protected byte[] monitorMethods(final String className, final Map<String, AtomicInteger> counters, final byte[] classfileBuffer) {
+	protected byte[] monitorMethods(final String className, final byte[] classfileBuffer) {
+		return monitorMethods(className, className, classfileBuffer);
+	}
+
+	/**
+	 * Attempts to instrument the given class to count its method invocations
+	 * under the given name. If the names differ, the class is generated and
+	 * read from the classfile contents, as it is not found by the class pool.
+	 * 
+	 * @param className the name of the class to instrument
+	 * @param countedName the name of the class to count the invocations for
+	 * @param classfileBuffer the classfile contents
+	 * @return the potentially modified classfile
+	 */
+	protected byte[] monitorMethods(final String className, final String countedName, final byte[] classfileBuffer) {
+		return monitorMethods(className, countedName, classfileBuffer, 0);
+	}
+
+	/**
+	 * Attempts to instrument the given class of a class loader to count its method
+	 * invocations under the given name. Classes of loaders with a handle are read from
+	 * the classfile contents as well, as the class pool may find a class of the same
+	 * name of another loader.
+	 * 
+	 * @param className the name of the class to instrument
+	 * @param countedName the name of the class to count the invocations for
+	 * @param classfileBuffer the classfile contents
+	 * @param loader the handle of the class loader, see {@link LoaderHandles}
+	 * @return the potentially modified classfile
+	 */
+	protected byte[] monitorMethods(final String className, final String countedName, final byte[] classfileBuffer, final int loader) {
 		final String name = Descriptor.toJavaName(className);
 
 		try {
-			final CtClass srcClass = classPool.get(name);
-			if (modifiable(srcClass)) {
-				final CtMethod[] methods = srcClass.getDeclaredMethods();
-				for (final CtMethod method : methods) {
-					if (!Modifier.isAbstract(method.getModifiers())) {
-						final String methodName = method.getName() + method.getSignature();
-						counters.put(methodName, new AtomicInteger());
-						final String countCode = "{ de.engehausen.inspector.Transformer.count(\"" + className + "\",\"" + methodName + "\"); } ";
-						try {
-							method.insertBefore(countCode);
-						} catch (Throwable t) {
-							recordIssue("cannot insert counter to %s%s: %s=%s".formatted(name, methodName, t.getClass().getName(), t.getMessage()));
-							return classfileBuffer;
-						}
-					}
-				}
-				try {
-					return srcClass.toBytecode();
-				} finally {
-					srcClass.detach();
-				}
+			final CtClass srcClass = className.equals(countedName) && loader == 0 ?
+				classPool.get(name) :
+				classPool.makeClass(new ByteArrayInputStream(classfileBuffer));
+			try {
+				return Optional
+					.ofNullable(instrumenter.instrument(srcClass, countedName, loader))
+					.orElse(classfileBuffer);
+			} finally {
+				srcClass.detach();
 			}
 		} catch (CannotCompileException|NotFoundException|IOException e) {
 			recordIssue("cannot instrument %s: %s=%s".formatted(name, e.getClass().getName(), e.getMessage()));
@@ -256,37 +510,43 @@ public class Transformer implements ClassFileTransformer {
 	}
 
 	/**
-	 * Classes that are generally excluded from instrumentation.
-	 * @param className the name of the class to check
-	 * @return {@code true} if the class is not to be instrumented
+	 * Adds a class-level probe to the given class for tiered instrumentation.
+	 * The probe is inserted into the constructors and static methods (for
+	 * interfaces, into all non-abstract methods), so that it fires when the
+	 * class is actually used rather than just loaded or initialized.
+	 *
+	 * @param className the name of the class to instrument
+	 * @param classfileBuffer the classfile contents
+	 * @param loader the handle of the class loader, see {@link LoaderHandles}
+	 * @return the potentially modified classfile
 	 */
-	protected boolean untransformable(final String className) {
-		return className.startsWith("java/") || 
-			className.startsWith("com/sun/") ||
-			className.startsWith("sun/") ||
-			className.startsWith("jdk/") ||
-			className.startsWith("de/engehausen/inspector");
-	}
+	protected byte[] monitorClass(final String className, final byte[] classfileBuffer, final int loader) {
+		final String name = Descriptor.toJavaName(className);
 
-	/**
-	 * Checks the name of the class with the exclusion and inclusion patterns.
-	 * Classes that match the exclusions or don't match the inclusions are
-	 * ignored
-	 * @param className the name of the class to check
-	 * @return  {@code true} if the class is to be ignored
-	 */
-	protected boolean reject(final String className) {
-		return excludes.matcher(className).matches() ||
-			!includes.matcher(className).matches();
+		try {
+			final CtClass srcClass = loader == 0 ?
+				classPool.get(name) :
+				classPool.makeClass(new ByteArrayInputStream(classfileBuffer));
+			try {
+				return Optional
+					.ofNullable(instrumenter.instrumentClass(srcClass, className, loader))
+					.orElse(classfileBuffer);
+			} finally {
+				srcClass.detach();
+			}
+		} catch (CannotCompileException|NotFoundException|IOException e) {
+			recordIssue("cannot instrument %s: %s=%s".formatted(name, e.getClass().getName(), e.getMessage()));
+		}
+		return classfileBuffer;
 	}
 
 	/**
-	 * Checks whether the given class can be instrumented.
-	 * @param candidate the class to check
-	 * @return {@code true} if it is considered instrumentable.
+	 * Returns the mode of the probe of a method as switched by the governor.
+	 * @param id the id of the method
+	 * @return the mode, or {@code null} for regular counting
 	 */
-	protected boolean modifiable(final CtClass candidate) {
-		return !(candidate.isAnnotation() || candidate.isArray() || candidate.isPrimitive());
+	protected String mode(final int id) {
+		return governor != null ? governor.mode(id) : null;
 	}
 
 	/**
@@ -300,36 +560,181 @@ public class Transformer implements ClassFileTransformer {
 	}
 
 	/**
-	 * Outputs the JSON report, either to {@code System.err} (default) or to a file.
+	 * Outputs the JSON report through the {@link ReportPipeline}, either to
+	 * {@code System.err} (default) or to files.
 	 */
 	protected void report() {
+		if (pusher != null) {
+			pusher.close();
+		}
+		if (publisher != null) {
+			publisher.close();
+		}
+		if (governor != null) {
+			governor.close();
+		}
+		if (upgrader != null) {
+			upgrader.close();
+		}
+		if (windows != null) {
+			windows.close();
+		}
 		if (reportIssues) {
 			System.err.println("Issues seen: " + reportIssues);
 			synchronized (issues) {
 				issues.forEach(System.err::println);
 			}
 		}
-		final var report = new Report(
-			classesUsed
-				.entrySet()
-				.stream()
-				.map(entry -> new AbstractMap.SimpleEntry<>(entry.getKey(), new ClassInfo(
-					entry
-						.getValue()
-						.values()
-						.stream()
-						.mapToInt(AtomicInteger::get)
-						.sum(),
-					details ? entry.getValue() : null)))
-				.filter(entry -> entry.getValue().totalCalls() > 0)
-				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)),
-				meta
-		);
-		try {
-			new ObjectMapper().writeValue(out, reporter.transform(report, meta));
-		} catch (IOException e) {
-			e.printStackTrace(System.err);
+		retireLoaders();
+		final UsageTable.Builder builder = new UsageTable.Builder(details);
+		final int[][] snapshots = windows != null ? windows.snapshots() : null;
+		// the upgraded classes are modified while transforming
+		final Set<MethodRegistry.Key> upgradedClasses;
+		synchronized (this) {
+			upgradedClasses = new HashSet<>(upgraded);
 		}
+		int probed = 0;
+		for (final MethodRegistry.ClassEntry entry : registry.classes()) {
+			// upgraded classes keep their class-level probe as first method, but are counted by method
+			final boolean probe = entry.methods().length > 0 &&
+				MethodRegistry.CLASS_PROBE.equals(entry.methods()[0]) &&
+				!upgradedClasses.contains(new MethodRegistry.Key(entry.loader(), entry.name()));
+			if (probe && !instrumenter.degraded(entry.name())) {
+				probed++;
+			}
+			// the class-level probe of upgraded classes keeps the calls before the upgrade
+			final int[] counts = new int[entry.ids().length];
+			int total = 0;
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = registry.count(entry.ids()[i]);
+				total += counts[i];
+			}
+			// classes with skipped methods are reported even without calls, so that they do not look unused
+			if (total > 0 || (entry.notInstrumented() != null && !entry.notInstrumented().isEmpty())) {
+				builder.add(reportedName(entry), total, entry.methods(), counts, entry.notInstrumented());
+				if (snapshots != null) {
+					final int[] ids = entry.ids();
+					final int[] recent = new int[ids.length];
+					for (int i = 0; i < ids.length; i++) {
+						recent[i] = counts[i] - (snapshots.length > 0 ? CounterWindows.count(snapshots[0], ids[i]) : 0);
+					}
+					builder.recent(Arrays.stream(recent).sum(), recent, CounterWindows.calls(snapshots, ids, counts));
+				}
+				if (groupNames != null) {
+					for (int group = 0; group < groupNames.length; group++) {
+						final int[] groupCounts = new int[counts.length];
+						for (int i = 0; i < counts.length; i++) {
+							groupCounts[i] = registry.count(entry.ids()[i], group);
+						}
+						final int groupTotal = Arrays.stream(groupCounts).sum();
+						if (groupTotal > 0) {
+							builder.group(groupNames[group], groupTotal, groupCounts);
+						}
+					}
+				}
+			}
+		}
+		// the classes of collected loaders only keep their folded counts
+		for (final MethodRegistry.RetiredClass retired : registry.retired()) {
+			final int total = Arrays.stream(retired.counts()).sum();
+			if (total > 0) {
+				builder.add(retired.name() + "@" + UNLOADED, total, retired.methods(), retired.counts(), null);
+			}
+		}
+		final Map<String, Object> reportMeta = new HashMap<>();
+		Optional
+			.ofNullable(meta)
+			.ifPresent(reportMeta::putAll);
+		synchronized (this) {
+			Optional
+				.ofNullable(instrumenter.inliningImpacts())
+				.ifPresent(impacts -> reportMeta.put(Report.KEY_INLINING, impacts));
+			if (windows != null) {
+				reportMeta.put(Report.KEY_WINDOWS, Map.of(
+					Report.KEY_WINDOWS_INTERVAL, Long.valueOf(windows.interval()),
+					Report.KEY_WINDOWS_COUNT, Integer.valueOf(windows.windows())));
+			}
+			if (governor != null) {
+				reportMeta.put(Report.KEY_GOVERNOR, governor.switches());
+			}
+			Optional
+				.ofNullable(instrumenter.generated())
+				.ifPresent(generated -> reportMeta.put(Report.KEY_GENERATED, generated));
+			Optional
+				.ofNullable(instrumenter.budget())
+				.ifPresent(budget -> reportMeta.put(Report.KEY_BUDGET, budget));
+			if (loaderHandles != null) {
+				reportMeta.put(Report.KEY_LOADERS, Map.of(
+					Report.KEY_LOADERS_LIVE, Integer.valueOf(loaderHandles.live()),
+					Report.KEY_LOADERS_UNLOADED, Integer.valueOf(unloaded)));
+			}
+			if (firstCalls != null) {
+				reportMeta.put(Report.KEY_TIMELINE, firstCalls.timeline(registry));
+			}
+			if (tiered) {
+				reportMeta.put(Report.KEY_TIERED, Map.of(
+					Report.KEY_TIERED_CLASSES, Integer.valueOf(probed),
+					Report.KEY_TIERED_UPGRADED, Integer.valueOf(upgradedClasses.size())));
+			}
+		}
+		pipeline.write(builder.build(meta == null && reportMeta.isEmpty() ? null : reportMeta).toReport());
+	}
+
+	/**
+	 * Reads the configuration from the agent arguments, see {@link #Transformer(String, Instrumentation)}.
+	 * @param agentArgs the agent arguments, may be {@code null}
+	 * @return the configuration
+	 * @throws UncheckedIOException if the configuration file cannot be read
+	 */
+	public static Configuration configuration(final String agentArgs) {
+		final Map<String, String> args = Stream
+			.of((agentArgs != null ? agentArgs : "").split(":"))
+			.filter(str -> str != null && str.indexOf('=') > 0)
+			.map(keyValue -> keyValue.split("="))
+			.collect(Collectors.toMap(arr -> arr[0], arr -> arr[1]));
+		return Optional
+			.ofNullable(args.get(Configuration.ARG_CONFIG))
+			.map(fileName -> {
+				try {
+					return new ObjectMapper().readValue(new File(fileName), Configuration.class);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).or(() -> Optional.of(new Configuration(
+				toList(args.get(Configuration.ARG_EXCLUDES)),
+				toList(args.get(Configuration.ARG_INCLUDES)),
+				Boolean.parseBoolean(args.getOrDefault(Configuration.ARG_DETAILS, Boolean.TRUE.toString())),
+				args.get(Configuration.ARG_OUT),
+				args.get(Configuration.ARG_REPORT_ISSUES),
+				args.get(Configuration.ARG_REPORTER),
+				toMap(args.get(Configuration.ARG_META)),
+				toInteger(args.get(Configuration.ARG_MIN_METHOD_SIZE)),
+				toBoolean(args.get(Configuration.ARG_SKIP_SYNTHETIC)),
+				toBoolean(args.get(Configuration.ARG_SKIP_ACCESSORS)),
+				toBoolean(args.get(Configuration.ARG_INLINING)),
+				null,
+				args.get(Configuration.ARG_COLLECTOR),
+				toInteger(args.get(Configuration.ARG_PUSH_INTERVAL)),
+				toBoolean(args.get(Configuration.ARG_TIERED)),
+				args.get(Configuration.ARG_MANIFEST),
+				toInteger(args.get(Configuration.ARG_WINDOWS)),
+				toInteger(args.get(Configuration.ARG_WINDOW_INTERVAL)),
+				toInteger(args.get(Configuration.ARG_MAX_CALL_RATE)),
+				toInteger(args.get(Configuration.ARG_SAMPLING)),
+				toInteger(args.get(Configuration.ARG_GOVERNOR_INTERVAL)),
+				null,
+				null,
+				toInteger(args.get(Configuration.ARG_MAX_GENERATED_CLASSES)),
+				toBoolean(args.get(Configuration.ARG_TIMELINE)),
+				toInteger(args.get(Configuration.ARG_JFR_INTERVAL)),
+				toInteger(args.get(Configuration.ARG_JFR_TOP_METHODS)),
+				toInteger(args.get(Configuration.ARG_MAX_METHODS)),
+				toInteger(args.get(Configuration.ARG_MAX_MEMORY)),
+				toList(args.get(Configuration.ARG_METHOD_EXCLUDES)),
+				toList(args.get(Configuration.ARG_METHOD_INCLUDES)),
+				args.get(Configuration.ARG_LOADERS))
+			))
+			.get();
 	}
 
 	/**
@@ -337,16 +742,34 @@ public class Transformer implements ClassFileTransformer {
 	 * @param csv the input
 	 * @return the result list
 	 */
-	private List<String> toList(final String csv) {
+	private static List<String> toList(final String csv) {
 		return csv != null ? Stream.of(csv.split(",")).toList() : Collections.emptyList();
 	}
 
+	/**
+	 * Converts an optional string to an integer.
+	 * @param str the input, may be {@code null}
+	 * @return the integer value or {@code null}
+	 */
+	private static Integer toInteger(final String str) {
+		return str != null ? Integer.valueOf(str) : null;
+	}
+
+	/**
+	 * Converts an optional string to a boolean.
+	 * @param str the input, may be {@code null}
+	 * @return the boolean value or {@code null}
+	 */
+	private static Boolean toBoolean(final String str) {
+		return str != null ? Boolean.valueOf(str) : null;
+	}
+
 	/**
 	 * Reads meta information in JSON format from a file
 	 * @param fileName the file to read
 	 * @return the meta information
 	 */
-	private Map<String, Object> toMap(final String fileName) {
+	private static Map<String, Object> toMap(final String fileName) {
 		if (fileName != null) {
 			try {
 				return new ObjectMapper().readValue(new File(fileName), new TypeReference<Map<String, Object>>() {});
@@ -357,4 +780,10 @@ public class Transformer implements ClassFileTransformer {
 		return Collections.emptyMap();
 	}
 
+	/**
+	 * The state cached per counted thread.
+	 * @param group the index of the thread group of the thread
+	 */
+	protected record ThreadContext(int group) {}
+
 }
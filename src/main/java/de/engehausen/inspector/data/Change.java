@@ -0,0 +1,39 @@
+package de.engehausen.inspector.data;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Change of the number of calls between two reports.
+ * @param before the number of calls in the earlier report
+ * @param after the number of calls in the later report
+ * @param methodChanges the changes per method (optional)
+ */
+@JsonInclude(Include.NON_NULL)
+@JsonIgnoreProperties(value = { "absolute", "relative" }, allowGetters = true)
+public record Change(int before, int after, Map<String, Change> methodChanges) {
+
+	/**
+	 * Returns the absolute change.
+	 * @return the difference of calls, negative if fewer calls were made
+	 */
+	@JsonProperty
+	public int absolute() {
+		return after - before;
+	}
+
+	/**
+	 * Returns the relative change.
+	 * @return the absolute change relative to the earlier number of calls, or
+	 * {@code null} if there were no calls earlier
+	 */
+	@JsonProperty
+	public Double relative() {
+		return before != 0 ? Double.valueOf(((double) after - before) / before) : null;
+	}
+
+}
@@ -1,5 +1,6 @@
 package de.engehausen.inspector.data;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -10,6 +11,31 @@ import com.fasterxml.jackson.annotation.JsonInclude;
  * calls and optionally a mapping with counts per method.
  * @param totalCalls the number of total calls for the class
  * @param methodCalls a map with counts for individual methods (optional)
+ * @param notInstrumented methods which were deliberately not instrumented, so
+ * that their calls are not counted (optional)
+ * @param change the change of calls compared to another report, only set in reports
+ * produced by comparing reports (optional)
+ * @param recent the usage within the last time windows, only set if the agent
+ * counts in windows (optional)
+ * @param groups the usage per group of threads, only set if the agent attributes
+ * calls to thread groups; groups without calls are omitted (optional)
  */
 @JsonInclude(JsonInclude.Include.NON_NULL) 
-public record ClassInfo(int totalCalls, Map<String, AtomicInteger> methodCalls) {}
+public record ClassInfo(
+	int totalCalls,
+	Map<String, AtomicInteger> methodCalls,
+	List<String> notInstrumented,
+	Change change,
+	RecentUsage recent,
+	Map<String, ClassInfo> groups) {
+
+	/**
+	 * Creates class usage information with method counts only.
+	 * @param totalCalls the number of total calls for the class
+	 * @param methodCalls a map with counts for individual methods (optional)
+	 */
+	public ClassInfo(final int totalCalls, final Map<String, AtomicInteger> methodCalls) {
+		this(totalCalls, methodCalls, null, null, null, null);
+	}
+
+}
@@ -12,6 +12,45 @@ import java.util.Map;
  * @param reportIssues flag to output instrumentation problems at the end of the VM (output to {@code System.err})
  * @param reporter the name of the reporter to use; if not specified a {@link Report} will be output
  * @param meta meta configuration that may be passed to the reporter
+ * @param minMethodSize the minimum bytecode length of a method to be instrumented (optional, defaults to {@code 0})
+ * @param skipSynthetic flag to not instrument synthetic and bridge methods, such as lambda bodies (optional)
+ * @param skipAccessors flag to not instrument simple getters and setters (optional)
+ * @param inlining flag to report methods whose instrumented size crosses a JIT inlining threshold (optional)
+ * @param reporters a list of reporter chains, each with its own output; replaces {@code reporter} and {@code out} if given
+ * @param collector address of a collector to push counter deltas to periodically: a port on the loopback
+ * interface or the path of a Unix domain socket (optional)
+ * @param pushInterval the interval in milliseconds for pushing counter deltas to the collector (optional, defaults to {@code 10000})
+ * @param tiered flag to instrument classes with a class-level probe only, and to upgrade classes
+ * to method-level counting once the probe fires (optional)
+ * @param manifest file name of the method manifest of classes instrumented ahead of time; if given,
+ * classes are not instrumented at runtime (optional)
+ * @param windows the number of time windows to report recent usage for (optional, no windows by default)
+ * @param windowInterval the length of a time window in milliseconds (optional, defaults to {@code 60000})
+ * @param maxCallRate the budget of calls per second of a method; methods exceeding it are switched
+ * to sampled counting, and are not counted anymore if they exceed it by the sampling factor (optional)
+ * @param sampling the sampling factor of methods exceeding the budget (optional, defaults to {@code 64})
+ * @param governorInterval the interval in milliseconds for checking the call rates (optional, defaults to {@code 1000})
+ * @param threadGroups names of groups of threads mapped to a regular expression of their thread names; the
+ * calls are counted per group, threads not matching any expression belong to the group {@code other} (optional)
+ * @param generatedClasses rules for the names of generated classes, applied in order before a class is instrumented:
+ * a regular expression of the class name mapped to the name to count the class under (which may refer to groups of
+ * the expression), or to an empty string to skip the class (optional, no rules by default)
+ * @param maxGeneratedClasses the maximum number of distinct generated classes instrumented under a mapped name;
+ * further ones are skipped (optional, defaults to {@code 1000})
+ * @param timeline flag to record the time and thread of the first call of each method, reported as
+ * the startup timeline (optional)
+ * @param jfrInterval the interval in milliseconds for publishing the counter deltas as Java Flight Recorder
+ * events (optional, no events by default)
+ * @param jfrTopMethods the number of methods called most to publish per batch of events (optional, defaults to {@code 10})
+ * @param maxMethods the budget of methods counted individually; once reached, further classes are counted with a
+ * single class-level counter (optional, no budget by default)
+ * @param maxMemory the budget of the estimated memory used by the agent in megabytes; once reached, further classes
+ * are counted with a single class-level counter (optional, no budget by default)
+ * @param methodExcludes a list of regular expressions of method names and signatures to exclude, e.g.
+ * {@code toString\(\).*} (optional)
+ * @param methodIncludes a list of regular expressions of method names and signatures to include (optional)
+ * @param loaders how classes of the same name loaded by different class loaders are counted: {@code merge}
+ * counts them together, {@code split} counts them per loader (optional, defaults to {@code merge})
  */
 public record Configuration(
 	List<String> excludes,
@@ -20,7 +59,32 @@ public record Configuration(
 	String out,
 	String reportIssues,
 	String reporter,
-	Map<String, Object> meta) {
+	Map<String, Object> meta,
+	Integer minMethodSize,
+	Boolean skipSynthetic,
+	Boolean skipAccessors,
+	Boolean inlining,
+	List<ReporterChain> reporters,
+	String collector,
+	Integer pushInterval,
+	Boolean tiered,
+	String manifest,
+	Integer windows,
+	Integer windowInterval,
+	Integer maxCallRate,
+	Integer sampling,
+	Integer governorInterval,
+	Map<String, String> threadGroups,
+	Map<String, String> generatedClasses,
+	Integer maxGeneratedClasses,
+	Boolean timeline,
+	Integer jfrInterval,
+	Integer jfrTopMethods,
+	Integer maxMethods,
+	Integer maxMemory,
+	List<String> methodExcludes,
+	List<String> methodIncludes,
+	String loaders) {
 
 	/** file name of JSON formatted configuration */
 	public static String ARG_CONFIG = "config";
@@ -39,5 +103,49 @@ public record Configuration(
 	public static String ARG_REPORTER = "reporter";
 	/** filename of meta configuration in JSON format */
 	public static String ARG_META = "meta";
+	/** minimum bytecode length of methods to instrument, defaults to {@code 0} */
+	public static String ARG_MIN_METHOD_SIZE = "minMethodSize";
+	/** flag to skip synthetic and bridge methods (defaults to {@code false}) */
+	public static String ARG_SKIP_SYNTHETIC = "skipSynthetic";
+	/** flag to skip getters and setters (defaults to {@code false}) */
+	public static String ARG_SKIP_ACCESSORS = "skipAccessors";
+	/** flag to report methods crossing inlining thresholds due to instrumentation (defaults to {@code false}) */
+	public static String ARG_INLINING = "inlining";
+	/** port or Unix domain socket path of the collector to push counter deltas to */
+	public static String ARG_COLLECTOR = "collector";
+	/** interval in milliseconds for pushing counter deltas (defaults to {@code 10000}) */
+	public static String ARG_PUSH_INTERVAL = "pushInterval";
+	/** flag to use tiered instrumentation (defaults to {@code false}) */
+	public static String ARG_TIERED = "tiered";
+	/** file name of the method manifest written by offline instrumentation */
+	public static String ARG_MANIFEST = "manifest";
+	/** number of time windows to report recent usage for */
+	public static String ARG_WINDOWS = "windows";
+	/** length of a time window in milliseconds (defaults to {@code 60000}) */
+	public static String ARG_WINDOW_INTERVAL = "windowInterval";
+	/** budget of calls per second of a method before its probe is degraded */
+	public static String ARG_MAX_CALL_RATE = "maxCallRate";
+	/** sampling factor of degraded methods (defaults to {@code 64}) */
+	public static String ARG_SAMPLING = "sampling";
+	/** interval in milliseconds for checking the call rates (defaults to {@code 1000}) */
+	public static String ARG_GOVERNOR_INTERVAL = "governorInterval";
+	/** maximum number of distinct generated classes instrumented under a mapped name (defaults to {@code 1000}) */
+	public static String ARG_MAX_GENERATED_CLASSES = "maxGeneratedClasses";
+	/** flag to record the first call of each method (defaults to {@code false}) */
+	public static String ARG_TIMELINE = "timeline";
+	/** interval in milliseconds for publishing Java Flight Recorder events */
+	public static String ARG_JFR_INTERVAL = "jfrInterval";
+	/** number of methods called most to publish per batch of events (defaults to {@code 10}) */
+	public static String ARG_JFR_TOP_METHODS = "jfrTopMethods";
+	/** budget of methods counted individually */
+	public static String ARG_MAX_METHODS = "maxMethods";
+	/** budget of the estimated memory used by the agent in megabytes */
+	public static String ARG_MAX_MEMORY = "maxMemory";
+	/** comma-separated list of regular expressions for method names and signatures to exclude, defaults to none */
+	public static String ARG_METHOD_EXCLUDES = "methodExcludes";
+	/** comma-separated list of regular expressions for method names and signatures to include, defaults to all */
+	public static String ARG_METHOD_INCLUDES = "methodIncludes";
+	/** {@code merge} or {@code split} counting of classes of different class loaders (defaults to {@code merge}) */
+	public static String ARG_LOADERS = "loaders";
 
 }
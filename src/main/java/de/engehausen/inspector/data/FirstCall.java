@@ -0,0 +1,14 @@
+package de.engehausen.inspector.data;
+
+/**
+ * The first call of a method, an entry of the startup timeline.
+ * @param className the name of the class
+ * @param method the name and signature of the method
+ * @param time the time of the first call in nanoseconds since the start of the agent
+ * @param thread the name of the thread making the first call
+ */
+public record FirstCall(
+	String className,
+	String method,
+	long time,
+	String thread) {}
@@ -0,0 +1,19 @@
+package de.engehausen.inspector.data;
+
+/**
+ * A method whose bytecode size crossed a JIT inlining threshold
+ * because of the instrumentation.
+ * @param className the name of the class
+ * @param method the name and signature of the method
+ * @param originalSize the bytecode length before instrumentation
+ * @param instrumentedSize the bytecode length after instrumentation
+ * @param threshold the name of the crossed threshold, e.g. {@code MaxInlineSize}
+ * @param limit the value of the crossed threshold
+ */
+public record InliningImpact(
+	String className,
+	String method,
+	int originalSize,
+	int instrumentedSize,
+	String threshold,
+	int limit) {}
@@ -0,0 +1,19 @@
+package de.engehausen.inspector.data;
+
+/**
+ * A change of the probe of a method made by the overhead governor.
+ * Counts of sampled methods are estimates; methods whose probe was
+ * removed are not counted after the switch. A skipped switch was not made,
+ * as no class counted under the name could be retransformed.
+ * @param className the name of the class
+ * @param method the name and signature of the method
+ * @param mode the new mode of the probe, {@code sampled} or {@code removed}, or {@code skipped}
+ * @param rate the calls per second that caused the switch
+ * @param time the time of the switch in milliseconds since the epoch
+ */
+public record ProbeSwitch(
+	String className,
+	String method,
+	String mode,
+	long rate,
+	long time) {}
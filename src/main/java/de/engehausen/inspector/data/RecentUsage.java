@@ -0,0 +1,20 @@
+package de.engehausen.inspector.data;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Recent usage of a class, covering the last time windows of the agent.
+ * @param totalCalls the number of calls within the windows
+ * @param methodCalls the number of calls within the windows per method (optional)
+ * @param windows the number of calls of the class per window, oldest first; the
+ * last window is the current, incomplete one
+ */
+@JsonInclude(Include.NON_NULL)
+public record RecentUsage(
+	int totalCalls,
+	Map<String, AtomicInteger> methodCalls,
+	int[] windows) {}
@@ -12,4 +12,47 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
  */
 public record Report(
 	Map<String, ClassInfo> classes,
-	@JsonInclude(Include.NON_NULL) Map<String, Object> meta) {}
+	@JsonInclude(Include.NON_NULL) Map<String, Object> meta) {
+
+	/** {@code inlining} - meta data key of the list of {@link InliningImpact}s (optional) */
+	public static final String KEY_INLINING = "inlining";
+	/** {@code tiered} - meta data key of the statistics of tiered instrumentation (optional) */
+	public static final String KEY_TIERED = "tiered";
+	/** {@code classes} - number of classes that received a class-level probe */
+	public static final String KEY_TIERED_CLASSES = "classes";
+	/** {@code upgraded} - number of classes upgraded to method-level counting */
+	public static final String KEY_TIERED_UPGRADED = "upgraded";
+	/** {@code governor} - meta data key of the list of {@link ProbeSwitch}es (optional) */
+	public static final String KEY_GOVERNOR = "governor";
+	/** {@code windows} - meta data key of the time windows of the {@link RecentUsage} (optional) */
+	public static final String KEY_WINDOWS = "windows";
+	/** {@code interval} - length of a time window in milliseconds */
+	public static final String KEY_WINDOWS_INTERVAL = "interval";
+	/** {@code count} - maximum number of time windows */
+	public static final String KEY_WINDOWS_COUNT = "count";
+	/** {@code generated} - meta data key of the statistics of generated classes (optional) */
+	public static final String KEY_GENERATED = "generated";
+	/** {@code mapped} - number of generated classes counted under a mapped name */
+	public static final String KEY_GENERATED_MAPPED = "mapped";
+	/** {@code skipped} - number of generated classes skipped by a rule */
+	public static final String KEY_GENERATED_SKIPPED = "skipped";
+	/** {@code capped} - number of generated classes skipped as the maximum was reached */
+	public static final String KEY_GENERATED_CAPPED = "capped";
+	/** {@code timeline} - meta data key of the list of {@link FirstCall}s, ordered by time (optional) */
+	public static final String KEY_TIMELINE = "timeline";
+	/** {@code budget} - meta data key of the method and memory budget use (optional) */
+	public static final String KEY_BUDGET = "budget";
+	/** {@code methods} - number of method ids used */
+	public static final String KEY_BUDGET_METHODS = "methods";
+	/** {@code memory} - estimated memory used by the agent in bytes */
+	public static final String KEY_BUDGET_MEMORY = "memory";
+	/** {@code degraded} - names of the classes counted with a class-level counter due to the budget */
+	public static final String KEY_BUDGET_DEGRADED = "degraded";
+	/** {@code loaders} - meta data key of the class loaders counted separately (optional) */
+	public static final String KEY_LOADERS = "loaders";
+	/** {@code live} - number of class loaders with classes counted that are still alive */
+	public static final String KEY_LOADERS_LIVE = "live";
+	/** {@code unloaded} - number of class loaders whose classes were folded after they were collected */
+	public static final String KEY_LOADERS_UNLOADED = "unloaded";
+
+}
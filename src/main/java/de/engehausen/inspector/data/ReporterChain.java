@@ -0,0 +1,19 @@
+package de.engehausen.inspector.data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A chain of reporters producing one output. Each reporter except the
+ * last one must produce a {@link Report}, which is the input of the next
+ * reporter. Chains with identical leading reporters and meta data share
+ * the results of these reporters.
+ * @param reporters the names of the reporters to apply in order
+ * @param out file name of the output, defaults to {@code System.err}
+ * @param meta meta configuration for the reporters of this chain, overrides
+ * entries of the general meta configuration (optional)
+ */
+public record ReporterChain(
+	List<String> reporters,
+	String out,
+	Map<String, Object> meta) {}
@@ -0,0 +1,655 @@
+package de.engehausen.inspector.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Columnar representation of usage data. Class and method names are
+ * interned, counts are held in parallel primitive arrays. The classes are
+ * sorted by name; the methods of the class at index {@code i} are found at the
+ * indices {@code methodStart(i)} (inclusive) to {@code methodStart(i + 1)} (exclusive)
+ * of the method columns.</p>
+ * <p>A {@link Report} can be obtained as a view of the table via {@link #toReport()};
+ * its {@link ClassInfo} records are only created when accessed, e.g. for serialization.
+ * {@link #of(Report)} returns the backing table of such a view without copying.</p>
+ * <p>Optionally, the table has the {@link RecentUsage} of the classes in further
+ * parallel columns, and the usage per group of threads in one pair of columns
+ * per group.</p>
+ */
+public final class UsageTable {
+
+	private final String[] classes;
+	private final int[] totals;
+	private final int[] methodStart;
+	private final String[] methods;
+	private final int[] counts;
+	private final String[][] notInstrumented;
+	private final int[] recentTotals;
+	private final int[] recentCounts;
+	private final int[][] recentWindows;
+	private final String[] groupNames;
+	private final int[][] groupTotals;
+	private final int[][] groupCounts;
+	private final boolean details;
+	private final Map<String, Object> meta;
+
+	private UsageTable(
+		final String[] classes,
+		final int[] totals,
+		final int[] methodStart,
+		final String[] methods,
+		final int[] counts,
+		final String[][] notInstrumented,
+		final int[] recentTotals,
+		final int[] recentCounts,
+		final int[][] recentWindows,
+		final String[] groupNames,
+		final int[][] groupTotals,
+		final int[][] groupCounts,
+		final boolean details,
+		final Map<String, Object> meta) {
+		this.classes = classes;
+		this.totals = totals;
+		this.methodStart = methodStart;
+		this.methods = methods;
+		this.counts = counts;
+		this.notInstrumented = notInstrumented;
+		this.recentTotals = recentTotals;
+		this.recentCounts = recentCounts;
+		this.recentWindows = recentWindows;
+		this.groupNames = groupNames;
+		this.groupTotals = groupTotals;
+		this.groupCounts = groupCounts;
+		this.details = details;
+		this.meta = meta;
+	}
+
+	/**
+	 * Returns the table backing the given report. If the report is not a
+	 * view of a table, a new table is built from the report.
+	 * @param report the report
+	 * @return the table with the data of the report
+	 */
+	public static UsageTable of(final Report report) {
+		if (report.classes() instanceof final ClassView view) {
+			return view.table().meta == report.meta() ? view.table() : view.table().withMeta(report.meta());
+		}
+		final Builder builder = new Builder(true);
+		report.classes().forEach((name, info) -> {
+			final Map<String, AtomicInteger> calls = info.methodCalls();
+			final String[] names = calls != null ? new String[calls.size()] : null;
+			final int[] values = calls != null ? new int[calls.size()] : null;
+			if (calls != null) {
+				int index = 0;
+				for (final Map.Entry<String, AtomicInteger> entry : calls.entrySet()) {
+					names[index] = entry.getKey();
+					values[index++] = entry.getValue().get();
+				}
+			}
+			builder.add(name, info.totalCalls(), names, values, info.notInstrumented());
+			final RecentUsage recent = info.recent();
+			if (recent != null) {
+				final Map<String, AtomicInteger> recentCalls = recent.methodCalls();
+				builder.recent(
+					recent.totalCalls(),
+					names != null && recentCalls != null ?
+						Arrays.stream(names).mapToInt(method -> Optional.ofNullable(recentCalls.get(method)).map(AtomicInteger::get).orElse(0)).toArray() :
+						null,
+					recent.windows());
+			}
+			Optional
+				.ofNullable(info.groups())
+				.ifPresent(groups -> groups.forEach((group, usage) -> {
+					final Map<String, AtomicInteger> groupCalls = usage.methodCalls();
+					builder.group(
+						group,
+						usage.totalCalls(),
+						names != null && groupCalls != null ?
+							Arrays.stream(names).mapToInt(method -> Optional.ofNullable(groupCalls.get(method)).map(AtomicInteger::get).orElse(0)).toArray() :
+							null);
+				}));
+		});
+		return builder.build(report.meta());
+	}
+
+	/**
+	 * Returns the number of classes.
+	 * @return the number of classes
+	 */
+	public int size() {
+		return classes.length;
+	}
+
+	/**
+	 * Returns the name of the class at the given index.
+	 * @param index the class index
+	 * @return the class name
+	 */
+	public String className(final int index) {
+		return classes[index];
+	}
+
+	/**
+	 * Returns the total number of calls of the class at the given index.
+	 * @param index the class index
+	 * @return the total number of calls
+	 */
+	public int total(final int index) {
+		return totals[index];
+	}
+
+	/**
+	 * Returns the start index of the methods of the class at the given index.
+	 * @param index the class index, may be {@link #size()} to obtain the end of the last class
+	 * @return the index of the first method of the class in the method columns
+	 */
+	public int methodStart(final int index) {
+		return methodStart[index];
+	}
+
+	/**
+	 * Returns the name and signature of the method at the given index.
+	 * @param index the method index
+	 * @return the method name and signature
+	 */
+	public String method(final int index) {
+		return methods[index];
+	}
+
+	/**
+	 * Returns the number of calls of the method at the given index.
+	 * @param index the method index
+	 * @return the number of calls
+	 */
+	public int count(final int index) {
+		return counts[index];
+	}
+
+	/**
+	 * Returns whether the table has recent usage data, see {@link RecentUsage}.
+	 * @return {@code true} if recent usage is available
+	 */
+	public boolean hasRecent() {
+		return recentWindows != null;
+	}
+
+	/**
+	 * Returns the number of recent calls of the class at the given index.
+	 * @param index the class index
+	 * @return the number of calls within the windows
+	 */
+	public int recentTotal(final int index) {
+		return recentTotals[index];
+	}
+
+	/**
+	 * Returns the number of recent calls of the method at the given index.
+	 * @param index the method index
+	 * @return the number of calls within the windows
+	 */
+	public int recentCount(final int index) {
+		return recentCounts[index];
+	}
+
+	/**
+	 * Returns the number of calls per window of the class at the given index.
+	 * @param index the class index
+	 * @return the calls per window, oldest first, or {@code null} if the class has no recent usage
+	 */
+	public int[] recentWindows(final int index) {
+		return recentWindows[index];
+	}
+
+	/**
+	 * Returns the names of the thread groups of the table.
+	 * @return the names of the groups, empty if the usage is not attributed to groups
+	 */
+	public String[] groups() {
+		return groupNames.clone();
+	}
+
+	/**
+	 * Returns the number of calls of the class at the given index made by a thread group.
+	 * @param group the group index, see {@link #groups()}
+	 * @param index the class index
+	 * @return the number of calls made by the threads of the group
+	 */
+	public int groupTotal(final int group, final int index) {
+		return groupTotals[group][index];
+	}
+
+	/**
+	 * Returns the number of calls of the method at the given index made by a thread group.
+	 * @param group the group index, see {@link #groups()}
+	 * @param index the method index
+	 * @return the number of calls made by the threads of the group
+	 */
+	public int groupCount(final int group, final int index) {
+		return groupCounts[group][index];
+	}
+
+	/**
+	 * Returns the index of the given class.
+	 * @param className the name of the class
+	 * @return the index, or a negative value if the class is not in the table
+	 */
+	public int indexOf(final String className) {
+		return Arrays.binarySearch(classes, className);
+	}
+
+	/**
+	 * Returns the meta data of the table.
+	 * @return the meta data, may be {@code null}
+	 */
+	public Map<String, Object> meta() {
+		return meta;
+	}
+
+	/**
+	 * Returns a copy of this table with different meta data.
+	 * The columns are shared.
+	 * @param next the meta data of the copy
+	 * @return the new table
+	 */
+	public UsageTable withMeta(final Map<String, Object> next) {
+		return new UsageTable(classes, totals, methodStart, methods, counts, notInstrumented, recentTotals, recentCounts, recentWindows, groupNames, groupTotals, groupCounts, details, next);
+	}
+
+	/**
+	 * Returns a table with the classes renamed. Classes renamed to {@code null}
+	 * are dropped; if several classes get the same name, the first one is kept.
+	 * @param names the new names, parallel to the classes of this table
+	 * @param next the meta data of the new table
+	 * @return the new table
+	 */
+	public UsageTable rename(final String[] names, final Map<String, Object> next) {
+		final Builder builder = new Builder(details);
+		for (int i = 0; i < classes.length; i++) {
+			if (names[i] != null) {
+				builder.add(
+					names[i],
+					totals[i],
+					details ? Arrays.copyOfRange(methods, methodStart[i], methodStart[i + 1]) : null,
+					details ? Arrays.copyOfRange(counts, methodStart[i], methodStart[i + 1]) : null,
+					notInstrumented != null && notInstrumented[i] != null ? Arrays.asList(notInstrumented[i]) : null);
+				if (recentWindows != null && recentWindows[i] != null) {
+					builder.recent(
+						recentTotals[i],
+						details ? Arrays.copyOfRange(recentCounts, methodStart[i], methodStart[i + 1]) : null,
+						recentWindows[i]);
+				}
+				for (int group = 0; group < groupNames.length; group++) {
+					if (groupTotals[group][i] != 0) {
+						builder.group(
+							groupNames[group],
+							groupTotals[group][i],
+							details ? Arrays.copyOfRange(groupCounts[group], methodStart[i], methodStart[i + 1]) : null);
+					}
+				}
+			}
+		}
+		return builder.build(next);
+	}
+
+	/**
+	 * Returns a report which is a view of this table.
+	 * @return the report
+	 */
+	public Report toReport() {
+		return new Report(new ClassView(this), meta);
+	}
+
+	/**
+	 * Creates the class information of the class at the given index.
+	 * @param index the class index
+	 * @return the class information
+	 */
+	public ClassInfo classInfo(final int index) {
+		Map<String, AtomicInteger> methodCalls = null;
+		if (details) {
+			methodCalls = new LinkedHashMap<>();
+			for (int i = methodStart[index]; i < methodStart[index + 1]; i++) {
+				methodCalls.put(methods[i], new AtomicInteger(counts[i]));
+			}
+		}
+		return new ClassInfo(
+			totals[index],
+			methodCalls,
+			notInstrumented != null && notInstrumented[index] != null ? List.of(notInstrumented[index]) : null,
+			null,
+			recentUsage(index),
+			groupUsage(index));
+	}
+
+	private Map<String, ClassInfo> groupUsage(final int index) {
+		Map<String, ClassInfo> result = null;
+		for (int group = 0; group < groupNames.length; group++) {
+			if (groupTotals[group][index] != 0) {
+				Map<String, AtomicInteger> methodCalls = null;
+				if (details) {
+					methodCalls = new LinkedHashMap<>();
+					for (int i = methodStart[index]; i < methodStart[index + 1]; i++) {
+						methodCalls.put(methods[i], new AtomicInteger(groupCounts[group][i]));
+					}
+				}
+				if (result == null) {
+					result = new LinkedHashMap<>();
+				}
+				result.put(groupNames[group], new ClassInfo(groupTotals[group][index], methodCalls));
+			}
+		}
+		return result;
+	}
+
+	private RecentUsage recentUsage(final int index) {
+		if (recentWindows == null || recentWindows[index] == null) {
+			return null;
+		}
+		Map<String, AtomicInteger> methodCalls = null;
+		if (details) {
+			methodCalls = new LinkedHashMap<>();
+			for (int i = methodStart[index]; i < methodStart[index + 1]; i++) {
+				methodCalls.put(methods[i], new AtomicInteger(recentCounts[i]));
+			}
+		}
+		return new RecentUsage(recentTotals[index], methodCalls, recentWindows[index]);
+	}
+
+	/**
+	 * Builds a table from rows added in any order.
+	 */
+	public static class Builder {
+
+		private final boolean details;
+		private final Map<String, String> names;
+		private final List<String> classNames;
+		private final List<String[]> skipped;
+		private final List<int[]> windows;
+		private final List<String> groupNames;
+		private final List<int[]> groupTotals;
+		private final List<int[]> groupCounts;
+		private int[] totals;
+		private int[] recentTotals;
+		private int[] recentCounts;
+		private int[] rowStart;
+		private String[] methods;
+		private int[] counts;
+		private int methodCount;
+
+		/**
+		 * Creates the builder.
+		 * @param details {@code true} to keep method details
+		 */
+		public Builder(final boolean details) {
+			this.details = details;
+			names = new HashMap<>();
+			classNames = new ArrayList<>();
+			skipped = new ArrayList<>();
+			windows = new ArrayList<>();
+			groupNames = new ArrayList<>();
+			groupTotals = new ArrayList<>();
+			groupCounts = new ArrayList<>();
+			totals = new int[16];
+			rowStart = new int[16];
+			methods = new String[16];
+			counts = new int[16];
+		}
+
+		/**
+		 * Adds a class.
+		 * @param className the name of the class
+		 * @param total the total number of calls
+		 * @param methodNames the names of the methods (may be {@code null})
+		 * @param methodCounts the number of calls of the methods, parallel to {@code methodNames}
+		 * @param notInstrumented the methods that were not instrumented (may be {@code null})
+		 * @return this builder
+		 */
+		public Builder add(
+			final String className,
+			final int total,
+			final String[] methodNames,
+			final int[] methodCounts,
+			final List<String> notInstrumented) {
+			final int row = classNames.size();
+			if (row == totals.length) {
+				totals = Arrays.copyOf(totals, 2 * row);
+				rowStart = Arrays.copyOf(rowStart, 2 * row);
+				if (recentTotals != null) {
+					recentTotals = Arrays.copyOf(recentTotals, 2 * row);
+				}
+				groupTotals.replaceAll(column -> Arrays.copyOf(column, 2 * row));
+			}
+			classNames.add(intern(className));
+			totals[row] = total;
+			rowStart[row] = methodCount;
+			if (details && methodNames != null) {
+				if (methodCount + methodNames.length > methods.length) {
+					final int length = Math.max(2 * methods.length, methodCount + methodNames.length);
+					methods = Arrays.copyOf(methods, length);
+					counts = Arrays.copyOf(counts, length);
+					if (recentCounts != null) {
+						recentCounts = Arrays.copyOf(recentCounts, length);
+					}
+					groupCounts.replaceAll(column -> Arrays.copyOf(column, length));
+				}
+				for (int i = 0; i < methodNames.length; i++) {
+					methods[methodCount] = intern(methodNames[i]);
+					counts[methodCount++] = methodCounts[i];
+				}
+			}
+			skipped.add(details && notInstrumented != null ?
+				notInstrumented.stream().map(this::intern).toArray(String[]::new) :
+				null);
+			windows.add(null);
+			return this;
+		}
+
+		/**
+		 * Sets the recent usage of the class added last.
+		 * @param total the number of calls within the windows
+		 * @param methodCounts the number of calls within the windows per method, parallel
+		 * to the methods of the class added last (may be {@code null})
+		 * @param calls the number of calls per window, oldest first
+		 * @return this builder
+		 */
+		public Builder recent(final int total, final int[] methodCounts, final int[] calls) {
+			final int row = classNames.size() - 1;
+			if (recentTotals == null) {
+				recentTotals = new int[totals.length];
+				recentCounts = new int[methods.length];
+			}
+			recentTotals[row] = total;
+			if (details && methodCounts != null) {
+				System.arraycopy(methodCounts, 0, recentCounts, rowStart[row], Math.min(methodCounts.length, end(row) - rowStart[row]));
+			}
+			windows.set(row, calls);
+			return this;
+		}
+
+		/**
+		 * Sets the usage by a group of threads of the class added last.
+		 * @param name the name of the thread group
+		 * @param total the number of calls made by the threads of the group
+		 * @param methodCounts the number of calls made by the threads of the group per method,
+		 * parallel to the methods of the class added last (may be {@code null})
+		 * @return this builder
+		 */
+		public Builder group(final String name, final int total, final int[] methodCounts) {
+			final int row = classNames.size() - 1;
+			int group = groupNames.indexOf(name);
+			if (group < 0) {
+				group = groupNames.size();
+				groupNames.add(intern(name));
+				groupTotals.add(new int[totals.length]);
+				groupCounts.add(new int[methods.length]);
+			}
+			groupTotals.get(group)[row] = total;
+			if (details && methodCounts != null) {
+				System.arraycopy(methodCounts, 0, groupCounts.get(group), rowStart[row], Math.min(methodCounts.length, end(row) - rowStart[row]));
+			}
+			return this;
+		}
+
+		/**
+		 * Builds the table; the classes are sorted by name.
+		 * @param meta the meta data of the table (may be {@code null})
+		 * @return the table
+		 */
+		public UsageTable build(final Map<String, Object> meta) {
+			final int size = classNames.size();
+			final Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = Integer.valueOf(i);
+			}
+			Arrays.sort(order, (a, b) -> classNames.get(a.intValue()).compareTo(classNames.get(b.intValue())));
+			final List<String> keep = new ArrayList<>(size);
+			final List<Integer> rows = new ArrayList<>(size);
+			for (final Integer row : order) {
+				final String name = classNames.get(row.intValue());
+				if (keep.isEmpty() || !keep.get(keep.size() - 1).equals(name)) {
+					keep.add(name);
+					rows.add(row);
+				}
+			}
+			final int count = keep.size();
+			final int[] sortedTotals = new int[count];
+			final int[] sortedStart = new int[count + 1];
+			final String[][] sortedSkipped = new String[count][];
+			boolean anySkipped = false;
+			int length = 0;
+			for (int i = 0; i < count; i++) {
+				final int row = rows.get(i).intValue();
+				sortedTotals[i] = totals[row];
+				sortedStart[i] = length;
+				length += end(row) - rowStart[row];
+				sortedSkipped[i] = skipped.get(row);
+				anySkipped |= sortedSkipped[i] != null;
+			}
+			sortedStart[count] = length;
+			final String[] sortedMethods = new String[length];
+			final int[] sortedCounts = new int[length];
+			final boolean recent = recentTotals != null;
+			final int[] sortedRecentTotals = recent ? new int[count] : null;
+			final int[] sortedRecentCounts = recent ? new int[length] : null;
+			final int[][] sortedWindows = recent ? new int[count][] : null;
+			final int groups = groupNames.size();
+			final int[][] sortedGroupTotals = new int[groups][count];
+			final int[][] sortedGroupCounts = new int[groups][length];
+			for (int i = 0; i < count; i++) {
+				final int row = rows.get(i).intValue();
+				System.arraycopy(methods, rowStart[row], sortedMethods, sortedStart[i], end(row) - rowStart[row]);
+				System.arraycopy(counts, rowStart[row], sortedCounts, sortedStart[i], end(row) - rowStart[row]);
+				if (recent) {
+					sortedRecentTotals[i] = recentTotals[row];
+					System.arraycopy(recentCounts, rowStart[row], sortedRecentCounts, sortedStart[i], end(row) - rowStart[row]);
+					sortedWindows[i] = windows.get(row);
+				}
+				for (int group = 0; group < groups; group++) {
+					sortedGroupTotals[group][i] = groupTotals.get(group)[row];
+					System.arraycopy(groupCounts.get(group), rowStart[row], sortedGroupCounts[group], sortedStart[i], end(row) - rowStart[row]);
+				}
+			}
+			return new UsageTable(
+				keep.toArray(new String[count]),
+				sortedTotals,
+				sortedStart,
+				sortedMethods,
+				sortedCounts,
+				anySkipped ? sortedSkipped : null,
+				sortedRecentTotals,
+				sortedRecentCounts,
+				sortedWindows,
+				groupNames.toArray(new String[groups]),
+				sortedGroupTotals,
+				sortedGroupCounts,
+				details,
+				meta);
+		}
+
+		private int end(final int row) {
+			return row + 1 < classNames.size() ? rowStart[row + 1] : methodCount;
+		}
+
+		private String intern(final String str) {
+			return names.computeIfAbsent(str, key -> key);
+		}
+	}
+
+	/**
+	 * Read-only map view of the classes of a table, sorted by class name.
+	 */
+	private static class ClassView extends AbstractMap<String, ClassInfo> {
+
+		private final UsageTable table;
+
+		ClassView(final UsageTable table) {
+			this.table = table;
+		}
+
+		UsageTable table() {
+			return table;
+		}
+
+		@Override
+		public int size() {
+			return table.size();
+		}
+
+		@Override
+		public boolean containsKey(final Object key) {
+			return key instanceof final String name && table.indexOf(name) >= 0;
+		}
+
+		@Override
+		public ClassInfo get(final Object key) {
+			if (key instanceof final String name) {
+				final int index = table.indexOf(name);
+				return index >= 0 ? table.classInfo(index) : null;
+			}
+			return null;
+		}
+
+		@Override
+		public Set<Map.Entry<String, ClassInfo>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public int size() {
+					return table.size();
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, ClassInfo>> iterator() {
+					return new Iterator<>() {
+						private int index;
+
+						@Override
+						public boolean hasNext() {
+							return index < table.size();
+						}
+
+						@Override
+						public Map.Entry<String, ClassInfo> next() {
+							if (index >= table.size()) {
+								throw new NoSuchElementException();
+							}
+							final int current = index++;
+							return new AbstractMap.SimpleImmutableEntry<>(table.className(current), table.classInfo(current));
+						}
+					};
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package de.engehausen.inspector.reporters;
+
+import java.util.List;
+import java.util.Map;
+
+import de.engehausen.inspector.data.UsageTable;
+
+/**
+ * Maps the classes of a report to weights based on the usage table, without
+ * creating a {@link Weight} per class up front. Subclasses implement
+ * {@link #report(UsageTable, int[], Map)}.
+ */
+public abstract class AbstractTableWeightMapper extends AbstractWeightMapper {
+
+	/**
+	 * Returns the list of weights to report.
+	 * @param table the usage table with the source file names as class names
+	 * @param order the indices of the classes of the table in ascending order of their number of calls
+	 * @param meta configuration information
+	 * @return a list of weights
+	 */
+	@Override
+	public abstract List<Weight> report(final UsageTable table, final int[] order, final Map<String, Object> meta);
+
+	/**
+	 * Maps a list of weights by putting them into a usage table, with the paths
+	 * as class names and the integer weights as number of calls.
+	 * @param weights the sorted input weights, which are the number of calls per class
+	 * @param meta configuration information
+	 * @return a list of weights
+	 */
+	@Override
+	public final List<Weight> report(final List<Weight> weights, final Map<String, Object> meta) {
+		final UsageTable.Builder builder = new UsageTable.Builder(false);
+		for (final Weight weight : weights) {
+			builder.add(weight.path(), weight.weight().intValue(), null, null, null);
+		}
+		final UsageTable table = builder.build(null);
+		return report(table, rank(table), meta);
+	}
+
+}
@@ -1,31 +1,49 @@
 package de.engehausen.inspector.reporters;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntFunction;
 
 import de.engehausen.inspector.data.Report;
 import de.engehausen.inspector.data.Reporter;
+import de.engehausen.inspector.data.UsageTable;
 
 /**
  * Maps the classes of a report to weights and returns a list of these.
+ * The classes are ranked by their number of calls on primitive arrays.
+ * Subclasses implement {@link #report(List, Map)}, which gets a {@link Weight}
+ * per class; new mappers extend {@link AbstractTableWeightMapper} instead,
+ * which works on the usage table and only creates the weights reported.
  */
 public abstract class AbstractWeightMapper implements Reporter<List<AbstractWeightMapper.Weight>> {
 
 	/**
-	 * {@inheritDoc}
+	 * Correlates the classes of the report to source files, unless this was already
+	 * done by a preceding {@link FileCorrelator}, and maps them to weights.
+	 * @param report the report.
+	 * @param meta a map of additional configuration data.
+	 * @return the list of weights
 	 */
 	@Override
 	public List<Weight> transform(final Report report, final Map<String, Object> meta) {
-		return report(new FileCorrelator()
-			.transform(report, meta)
-			.classes()
-			.entrySet()
-			.stream()
-			.map(entry -> new Weight(entry.getKey(), Integer.valueOf(entry.getValue().totalCalls())))
-			.sorted((a, b) -> a.weight().intValue() - b.weight().intValue())
-			.toList(),
-			meta
-		);
+		final UsageTable table = FileCorrelator.correlated(meta) ?
+			UsageTable.of(report) :
+			new FileCorrelator().correlate(UsageTable.of(report), meta);
+		return report(table, rank(table), meta);
+	}
+
+	/**
+	 * Returns the list of weights to report. The classes are passed as weights
+	 * to {@link #report(List, Map)}.
+	 * @param table the usage table with the source file names as class names
+	 * @param order the indices of the classes of the table in ascending order of their number of calls
+	 * @param meta configuration information
+	 * @return a list of weights
+	 */
+	public List<Weight> report(final UsageTable table, final int[] order, final Map<String, Object> meta) {
+		return report(weights(table, order, index -> Integer.valueOf(table.total(order[index]))), meta);
 	}
 
 	/**
@@ -36,6 +54,47 @@ public abstract class AbstractWeightMapper implements Reporter<List<AbstractWeig
 	 */
 	public abstract List<Weight> report(final List<Weight> weights, final Map<String, Object> meta);
 
+	/**
+	 * Ranks the classes of the table by their number of calls.
+	 * @param table the usage table
+	 * @return the class indices in ascending order of calls
+	 */
+	protected int[] rank(final UsageTable table) {
+		final int size = table.size();
+		final long[] keys = new long[size];
+		for (int i = 0; i < size; i++) {
+			// the count in the upper, the index in the lower half: no overflow, stable
+			keys[i] = ((long) table.total(i) << 32) | i;
+		}
+		Arrays.sort(keys);
+		final int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Returns a list view of weights.
+	 * @param table the usage table with the source file names as class names
+	 * @param order the class indices in output order
+	 * @param weight function returning the weight for an output position
+	 * @return the list of weights
+	 */
+	protected List<Weight> weights(final UsageTable table, final int[] order, final IntFunction<Number> weight) {
+		return new AbstractList<>() {
+			@Override
+			public Weight get(final int index) {
+				return new Weight(table.className(order[index]), weight.apply(index));
+			}
+
+			@Override
+			public int size() {
+				return order.length;
+			}
+		};
+	}
+
 	/**
 	 * An entry of the weight list.
 	 * @param path the source file name
@@ -16,9 +16,9 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import de.engehausen.inspector.data.ClassInfo;
 import de.engehausen.inspector.data.Report;
 import de.engehausen.inspector.data.Reporter;
+import de.engehausen.inspector.data.UsageTable;
 
 /**
  * <p>Attempts to map class names to source files.
@@ -43,6 +43,11 @@ public class FileCorrelator implements Reporter<Report> {
 	public static final String KEY_EXTENSIONS = "extensions";
 	/** {@code notFound} - optional output list of classes that could not be correlated */
 	public static final String KEY_NOT_FOUND = "notFound";
+	/**
+	 * {@code correlated} - flag in the meta configuration of a reporter whose input was produced by the
+	 * correlator, set by the {@link de.engehausen.inspector.ReportPipeline}; it is not part of any output
+	 */
+	public static final String KEY_CORRELATED = "correlated";
 
 	/**
 	 * {@inheritDoc}
@@ -62,40 +67,64 @@ public class FileCorrelator implements Reporter<Report> {
 	 */
 	@Override
 	public Report transform(final Report report, final Map<String, Object> meta) {
+		return correlate(UsageTable.of(report), meta).toReport();
+	}
+
+	/**
+	 * Renames the classes of the table to their source files. Classes without a
+	 * source file are dropped and listed under {@link #KEY_NOT_FOUND} in the
+	 * meta data of the result.
+	 * @param table the usage table.
+	 * @param meta a map of additional configuration data.
+	 * @return a new table
+	 */
+	public UsageTable correlate(final UsageTable table, final Map<String, Object> meta) {
 		final List<String> extensions = extensions(meta.get(KEY_EXTENSIONS));
-		final Set<String> sources = sourceFiles(
+		final Map<String, List<String>> sources = sourceFiles(
 			Path.of(meta.getOrDefault(KEY_SOURCE_ROOT, ".").toString()).toAbsolutePath().normalize(),
 			meta.get(KEY_SOURCE_ROOTS),
-			extensions);
-		final Map<String, ClassInfo> next = new HashMap<>();
+			extensions)
+			.stream()
+			.collect(Collectors.groupingBy(this::fileName));
 		final Map<String, Object> metaNext = new HashMap<String, Object>();
 		Optional
-			.ofNullable(report.meta())
+			.ofNullable(table.meta())
 			.ifPresent(metaNext::putAll);
 		final List<String> notFound = new ArrayList<>();
-		report.classes()
-			.forEach((key, value) -> {
-				extensions
-					.stream()
-					.map(extension -> {
-						var suffix = "%s.%s".formatted(key, extension);
-						return sources
-							.stream()
-							.filter(candidate -> candidate.endsWith(suffix))
-							.findFirst()
-							.orElse(null);
-					})
-					.filter(str -> str != null)
-					.findFirst()
-					.ifPresentOrElse(
-						source -> next.put(source, value),
-						() -> notFound.add(key)
-					);
-			});
+		final String[] names = new String[table.size()];
+		for (int i = 0; i < names.length; i++) {
+			final String key = table.className(i);
+			names[i] = extensions
+				.stream()
+				.map(extension -> {
+					final var suffix = "%s.%s".formatted(key, extension);
+					return sources
+						.getOrDefault(fileName(suffix), Collections.emptyList())
+						.stream()
+						.filter(candidate -> candidate.endsWith(suffix))
+						.findFirst()
+						.orElse(null);
+				})
+				.filter(str -> str != null)
+				.findFirst()
+				.orElse(null);
+			if (names[i] == null) {
+				notFound.add(key);
+			}
+		}
 		if (!notFound.isEmpty()) {
 			metaNext.put(KEY_NOT_FOUND, notFound);
 		}
-		return new Report(next, metaNext.isEmpty() ? null : metaNext);
+		return table.rename(names, metaNext);
+	}
+
+	/**
+	 * Checks whether the input of a reporter is the output of the correlator.
+	 * @param meta the meta configuration of the reporter
+	 * @return {@code true} if the classes of the input are already source files
+	 */
+	public static boolean correlated(final Map<String, Object> meta) {
+		return meta != null && Boolean.TRUE.equals(meta.get(KEY_CORRELATED));
 	}
 
 	protected List<String> extensions(final Object info) {
@@ -133,6 +162,10 @@ public class FileCorrelator implements Reporter<Report> {
 		}
 	}
 
+	protected String fileName(final String path) {
+		return path.substring(1 + path.lastIndexOf('/'));
+	}
+
 	protected String extension(final Path filePath) {
 		return Optional
 			.ofNullable(filePath.getFileName())
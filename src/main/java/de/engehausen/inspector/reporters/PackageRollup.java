@@ -0,0 +1,138 @@
+package de.engehausen.inspector.reporters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import de.engehausen.inspector.data.Report;
+import de.engehausen.inspector.data.Reporter;
+import de.engehausen.inspector.data.UsageTable;
+
+/**
+ * Aggregates the calls of the classes up the package hierarchy in a single
+ * pass over the {@link UsageTable}, using a trie of the package names. No
+ * per-class objects are created. The result is the root package with its
+ * sub-packages.<br>
+ * The depth of the hierarchy can be limited with {@link #KEY_DEPTH}; deeper
+ * packages are counted in their ancestor at that depth. Packages with fewer
+ * calls than {@link #KEY_MIN_CALLS} are pruned; their calls remain counted in
+ * their parent.
+ */
+public class PackageRollup implements Reporter<PackageRollup.PackageNode> {
+
+	/** {@code packages} */
+	public static final String NAME = "packages";
+	/** {@code depth} - the maximum depth of packages to report, unlimited by default */
+	public static final String KEY_DEPTH = "depth";
+	/** {@code minCalls} - the minimum number of calls of a package to be reported, defaults to 0 */
+	public static final String KEY_MIN_CALLS = "minCalls";
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String name() {
+		return NAME;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public PackageNode transform(final Report report, final Map<String, Object> meta) {
+		final int depth = Optional
+			.ofNullable(meta.get(KEY_DEPTH))
+			.map(value -> Integer.valueOf(Integer.parseInt(value.toString())))
+			.orElse(Integer.valueOf(Integer.MAX_VALUE))
+			.intValue();
+		final long minCalls = Long.parseLong(meta.getOrDefault(KEY_MIN_CALLS, "0").toString());
+		return rollup(UsageTable.of(report), depth).toPackage("", minCalls);
+	}
+
+	/**
+	 * Builds the trie of the packages of the table.
+	 * @param table the table, with classes sorted by name
+	 * @param depth the maximum depth of the trie
+	 * @return the root of the trie
+	 */
+	protected Node rollup(final UsageTable table, final int depth) {
+		final Node root = new Node("");
+		for (int i = 0; i < table.size(); i++) {
+			final String className = table.className(i);
+			final int total = table.total(i);
+			Node node = root;
+			node.add(total);
+			int start = 0;
+			// the last segment is the class itself
+			for (int end = className.indexOf('/'), level = 0; end >= 0 && level < depth; end = className.indexOf('/', start), level++) {
+				node = node.child(className, start, end);
+				node.add(total);
+				start = end + 1;
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * A node of the package trie. As the classes are sorted by name, a
+	 * package matching the next class, if it exists, is always the last
+	 * child of its parent.
+	 */
+	protected static class Node {
+
+		private final String segment;
+		private final List<Node> children;
+		private long totalCalls;
+		private int classes;
+
+		Node(final String segment) {
+			this.segment = segment;
+			children = new ArrayList<>();
+		}
+
+		void add(final int calls) {
+			totalCalls += calls;
+			classes++;
+		}
+
+		Node child(final String className, final int start, final int end) {
+			if (!children.isEmpty()) {
+				final Node last = children.get(children.size() - 1);
+				if (last.segment.length() == end - start && className.regionMatches(start, last.segment, 0, end - start)) {
+					return last;
+				}
+			}
+			final Node next = new Node(className.substring(start, end));
+			children.add(next);
+			return next;
+		}
+
+		PackageNode toPackage(final String name, final long minCalls) {
+			final List<PackageNode> packages = new ArrayList<>();
+			for (final Node child : children) {
+				if (child.totalCalls >= minCalls) {
+					packages.add(child.toPackage(name.isEmpty() ? child.segment : name + '/' + child.segment, minCalls));
+				}
+			}
+			return new PackageNode(name, totalCalls, classes, packages);
+		}
+	}
+
+	/**
+	 * The usage of a package, including its sub-packages.
+	 * @param name the name of the package, separated by {@code /}; empty for the root
+	 * @param totalCalls the number of calls of the classes of the package
+	 * @param classes the number of classes of the package
+	 * @param packages the sub-packages (omitted if empty)
+	 */
+	public record PackageNode(
+		String name,
+		long totalCalls,
+		int classes,
+		@JsonInclude(Include.NON_EMPTY) List<PackageNode> packages) {}
+
+}
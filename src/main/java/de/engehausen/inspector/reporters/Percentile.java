@@ -1,14 +1,15 @@
 package de.engehausen.inspector.reporters;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import de.engehausen.inspector.data.UsageTable;
+
 /**
  * Maps the classes of the input report to a list of weights
  * according to the percentile of each class (0..1).
  */
-public class Percentile extends AbstractWeightMapper {
+public class Percentile extends AbstractTableWeightMapper {
 
 	/** {@code percentile} */
 	public static final String NAME = "percentile";
@@ -27,18 +28,9 @@ public class Percentile extends AbstractWeightMapper {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public List<Weight> report(final List<Weight> weights, final Map<String, Object> meta) {
-		final List<Weight> result = new ArrayList<>(weights.size());
-		final int max = weights.size();
-		final double maxd = max;
-		for (int index = 0; index < max; index++) {
-			final Weight entry = weights.get(index);
-			result.add(new Weight(
-				entry.path(),
-				Double.valueOf(Math.round(DIV * (1 + index) / maxd) / DIV))
-			);
-		}
-		return result;
+	public List<Weight> report(final UsageTable table, final int[] order, final Map<String, Object> meta) {
+		final double max = order.length;
+		return weights(table, order, index -> Double.valueOf(Math.round(DIV * (1 + index) / max) / DIV));
 	}
 
 }
@@ -1,15 +1,16 @@
 package de.engehausen.inspector.reporters;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import de.engehausen.inspector.data.UsageTable;
+
 /**
  * Maps the classes of the input report to a list of weights
  * according to the quantized percentile of each class (0..1)
  * in steps defined be {@link #KEY_STEPS} (default: 4).
  */
-public class Quantized extends AbstractWeightMapper {
+public class Quantized extends AbstractTableWeightMapper {
 
 	/** {@code quantized} */
 	public static final String NAME = "quantized";
@@ -28,16 +29,10 @@ public class Quantized extends AbstractWeightMapper {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public List<Weight> report(final List<Weight> weights, final Map<String, Object> meta) {
+	public List<Weight> report(final UsageTable table, final int[] order, final Map<String, Object> meta) {
 		final double steps = Double.parseDouble(meta.getOrDefault(KEY_STEPS, "4").toString());
-		final List<Weight> result = new ArrayList<>(weights.size());
-		final int max = weights.size();
-		final double maxD = max;
-		for (int index = 0; index < max; index++) {
-			final Weight weight = weights.get(index);
-			result.add(new Weight(weight.path(), Math.round(steps * (1 + index) / maxD) / steps));
-		}
-		return result;
+		final double max = order.length;
+		return weights(table, order, index -> Double.valueOf(Math.round(steps * (1 + index) / max) / steps));
 	}
 
 }
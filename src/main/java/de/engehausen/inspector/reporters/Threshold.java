@@ -1,9 +1,10 @@
 package de.engehausen.inspector.reporters;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import de.engehausen.inspector.data.UsageTable;
+
 /**
  * Maps the classes of the input report to a list of weights
  * according to either 0 or 1 depending on
@@ -12,7 +13,7 @@ import java.util.Map;
  * This means: "Below threshold == unimportant, weight 0" and
  * "above == important, weight 1".
  */
-public class Threshold extends AbstractWeightMapper {
+public class Threshold extends AbstractTableWeightMapper {
 
 	/** {@code quantized} */
 	public static final String NAME = "threshold";
@@ -29,16 +30,17 @@ public class Threshold extends AbstractWeightMapper {
 
 	/**
 	 * {@inheritDoc}
+	 * The weights are listed in descending order of calls.
 	 */
 	@Override
-	public List<Weight> report(final List<Weight> weights, final Map<String, Object> meta) {
-		final int cutOff = (int) (((double) weights.size()) * Double.parseDouble(meta.getOrDefault(KEY_LIMIT, "0.5").toString()));
-		final List<Weight> result = new ArrayList<>(weights.size());
-		for (int index = weights.size(); --index >= 0; ) {
-			final Weight weight = weights.get(index);
-			result.add(new Weight(weight.path(), Integer.valueOf(index >= cutOff ? Integer.valueOf(1) : Integer.valueOf(0))));
+	public List<Weight> report(final UsageTable table, final int[] order, final Map<String, Object> meta) {
+		final int max = order.length;
+		final int cutOff = (int) (((double) max) * Double.parseDouble(meta.getOrDefault(KEY_LIMIT, "0.5").toString()));
+		final int[] descending = new int[max];
+		for (int index = 0; index < max; index++) {
+			descending[index] = order[max - 1 - index];
 		}
-		return result;
+		return weights(table, descending, index -> Integer.valueOf(max - 1 - index >= cutOff ? 1 : 0));
 	}
 
 }
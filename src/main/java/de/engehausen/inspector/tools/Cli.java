@@ -0,0 +1,321 @@
+package de.engehausen.inspector.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.engehausen.inspector.ReportPipeline;
+import de.engehausen.inspector.data.ClassInfo;
+import de.engehausen.inspector.data.Configuration;
+import de.engehausen.inspector.data.Report;
+import de.engehausen.inspector.data.UsageTable;
+
+/**
+ * Command line entry point of the agent jar. The first argument is the
+ * name of the command, followed by its options and arguments.
+ */
+public class Cli {
+
+	/** {@code diff} - compares reports */
+	public static final String COMMAND_DIFF = "diff";
+	/** {@code collect} - collects counters pushed by agents */
+	public static final String COMMAND_COLLECT = "collect";
+	/** {@code instrument} - instruments jars and class directories ahead of time */
+	public static final String COMMAND_INSTRUMENT = "instrument";
+	/** default name of the method manifest written by {@code instrument} */
+	public static final String DEFAULT_MANIFEST = "usage-inspector-manifest.json";
+
+	private static final String USAGE_DIFF = "usage: diff [--min-absolute n] [--min-relative r] [--out file] before.json[,...] after.json[,...]";
+	private static final String USAGE_COLLECT = "usage: collect --listen port|socket-path [--config config.json | --out file] [--interval ms]";
+	private static final String USAGE_INSTRUMENT = "usage: instrument --out directory [--config config.json] [--manifest file] input.jar|classes-directory...";
+
+	/**
+	 * Runs a command.
+	 * @param args the command and its arguments
+	 */
+	public static void main(final String[] args) {
+		final int code = new Cli().run(args, System.out, System.err);
+		if (code != 0) {
+			System.exit(code);
+		}
+	}
+
+	/**
+	 * Runs a command.
+	 * @param args the command and its arguments
+	 * @param out the standard output
+	 * @param err the error output
+	 * @return the exit code
+	 */
+	public int run(final String[] args, final PrintStream out, final PrintStream err) {
+		if (args.length == 0) {
+			err.println("usage: <command> [options] [arguments], commands: %s, %s, %s".formatted(COMMAND_DIFF, COMMAND_COLLECT, COMMAND_INSTRUMENT));
+			return 1;
+		}
+		try {
+			final Options options = new Options(Arrays.asList(args).subList(1, args.length));
+			switch (args[0]) {
+			case COMMAND_DIFF:
+				return diff(options, out, err);
+			case COMMAND_COLLECT:
+				return collect(options, out, err);
+			case COMMAND_INSTRUMENT:
+				return instrument(options, out, err);
+			default:
+				err.println("unknown command '%s'".formatted(args[0]));
+				return 1;
+			}
+		} catch (IOException|RuntimeException e) {
+			err.println(e.getMessage());
+			return 2;
+		}
+	}
+
+	/**
+	 * Compares two (sets of) reports, see {@link ReportDiff}. Several reports
+	 * separated by comma are merged before comparing them. The reports are streamed;
+	 * if a report turns out not to be sorted, the comparison is repeated with that
+	 * report read into memory. Therefore, the result is written to standard output
+	 * only once it is complete.
+	 * @param options the command line options
+	 * @param out the standard output
+	 * @param err the error output
+	 * @return the exit code
+	 * @throws IOException in case of error
+	 */
+	protected int diff(final Options options, final PrintStream out, final PrintStream err) throws IOException {
+		if (options.arguments().size() != 2) {
+			err.println(USAGE_DIFF);
+			return 1;
+		}
+		final ReportDiff diff = new ReportDiff(
+			Integer.parseInt(options.get("min-absolute", "1")),
+			Double.parseDouble(options.get("min-relative", "0")));
+		final Map<String, Object> meta = new HashMap<>();
+		meta.put("before", options.arguments().get(0));
+		meta.put("after", options.arguments().get(1));
+		final String fileName = options.get("out", null);
+		final File target = fileName != null ? new File(fileName) : File.createTempFile("usage-inspector-diff", ".json");
+		try {
+			final Set<String> unsorted = new HashSet<>();
+			while (!diff(diff, options.arguments(), target, meta, unsorted)) {
+				// repeat with the unsorted reports in memory
+			}
+			if (fileName == null) {
+				Files.copy(target.toPath(), out);
+				out.flush();
+			}
+		} finally {
+			if (fileName == null) {
+				Files.delete(target.toPath());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Compares two (sets of) reports and writes the result to a file.
+	 * @param diff the comparison
+	 * @param arguments the comma-separated lists of the report files before and after
+	 * @param target the file to write to
+	 * @param meta the meta data of the result
+	 * @param unsorted the report files known not to be sorted; files found unsorted are added
+	 * @return {@code true} if the result was written, {@code false} if an unsorted report was found
+	 * @throws IOException in case of error
+	 */
+	protected boolean diff(
+		final ReportDiff diff,
+		final List<String> arguments,
+		final File target,
+		final Map<String, Object> meta,
+		final Set<String> unsorted) throws IOException {
+		final List<ReportReader> readers = new ArrayList<>();
+		try {
+			final Iterator<Map.Entry<String, ClassInfo>> before = ReportDiff.merge(open(arguments.get(0), readers, unsorted));
+			final Iterator<Map.Entry<String, ClassInfo>> after = ReportDiff.merge(open(arguments.get(1), readers, unsorted));
+			try (final OutputStream stream = new FileOutputStream(target)) {
+				diff.diff(before, after, stream, meta);
+			}
+			return true;
+		} catch (IllegalStateException e) {
+			final List<String> found = readers
+				.stream()
+				.filter(reader -> !reader.sorted())
+				.map(ReportReader::source)
+				.toList();
+			if (found.isEmpty()) {
+				throw e;
+			}
+			unsorted.addAll(found);
+			return false;
+		} finally {
+			for (final Closeable reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Runs a {@link Collector} until the VM is terminated. The merged report is
+	 * written periodically and at the end through the reporters of the configuration
+	 * (or to the {@code --out} file if no configuration is given).
+	 * @param options the command line options
+	 * @param out the standard output
+	 * @param err the error output
+	 * @return the exit code
+	 * @throws IOException in case of error
+	 */
+	protected int collect(final Options options, final PrintStream out, final PrintStream err) throws IOException {
+		final String listen = options.get("listen", null);
+		if (listen == null) {
+			err.println(USAGE_COLLECT);
+			return 1;
+		}
+		final String config = options.get("config", null);
+		final Map<String, Object> defaults = new HashMap<>();
+		defaults.put(Configuration.ARG_DETAILS, Boolean.TRUE);
+		defaults.put(Configuration.ARG_OUT, options.get("out", null));
+		final Configuration configuration = config != null ?
+			new ObjectMapper().readValue(new File(config), Configuration.class) :
+			new ObjectMapper().convertValue(defaults, Configuration.class);
+		final ReportPipeline pipeline = ReportPipeline.of(configuration);
+		final Collector collector = new Collector(listen);
+		final long interval = Long.parseLong(options.get("interval", "60000"));
+		final Runnable write = () -> pipeline.write(collector.snapshot(configuration.details()).toReport());
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				collector.close();
+			} catch (IOException e) {
+				err.println(e.getMessage());
+			}
+			write.run();
+		}));
+		collector.start();
+		err.println("collecting on %s".formatted(collector.address()));
+		try {
+			while (true) {
+				Thread.sleep(interval);
+				write.run();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return 0;
+	}
+
+	/**
+	 * Instruments jars and class directories ahead of time, see {@link OfflineInstrumenter}.
+	 * The instrumented inputs are written to the {@code --out} directory using their
+	 * original names, along with the method manifest (unless specified otherwise).
+	 * @param options the command line options
+	 * @param out the standard output
+	 * @param err the error output
+	 * @return the exit code
+	 * @throws IOException in case of error
+	 */
+	protected int instrument(final Options options, final PrintStream out, final PrintStream err) throws IOException {
+		final String directory = options.get("out", null);
+		if (directory == null || options.arguments().isEmpty()) {
+			err.println(USAGE_INSTRUMENT);
+			return 1;
+		}
+		final String config = options.get("config", null);
+		final OfflineInstrumenter instrumenter = new OfflineInstrumenter(
+			config != null ? Configuration.ARG_CONFIG + "=" + config : null,
+			options.arguments());
+		final File target = new File(directory);
+		Files.createDirectories(target.toPath());
+		final File manifest = new File(options.get("manifest", new File(target, DEFAULT_MANIFEST).getPath()));
+		instrumenter.instrument(target, manifest);
+		instrumenter.issues().forEach(err::println);
+		out.println("instrumented %d methods, manifest written to %s".formatted(Integer.valueOf(instrumenter.methods()), manifest));
+		return 0;
+	}
+
+	/**
+	 * Opens the comma-separated list of report files for streaming. Reports
+	 * known not to be sorted are read into memory and sorted.
+	 * @param files the comma-separated list of files
+	 * @param readers the list to add the opened readers to, which must be closed
+	 * @param unsorted the files known not to be sorted
+	 * @return the sorted streams of the classes of the reports
+	 * @throws IOException in case of error
+	 */
+	protected List<Iterator<Map.Entry<String, ClassInfo>>> open(final String files, final List<ReportReader> readers, final Set<String> unsorted) throws IOException {
+		final List<Iterator<Map.Entry<String, ClassInfo>>> result = new ArrayList<>();
+		for (final String fileName : files.split(",")) {
+			final File file = new File(fileName);
+			if (!unsorted.contains(file.getPath())) {
+				final ReportReader reader = new ReportReader(file);
+				readers.add(reader);
+				result.add(reader);
+			} else {
+				result.add(UsageTable
+					.of(new ObjectMapper().readValue(file, Report.class))
+					.toReport()
+					.classes()
+					.entrySet()
+					.iterator());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Command line options of the form {@code --name value} and arguments.
+	 */
+	protected static class Options {
+
+		private final Map<String, String> values;
+		private final List<String> arguments;
+
+		Options(final List<String> args) {
+			values = new HashMap<>();
+			arguments = new ArrayList<>();
+			for (int i = 0; i < args.size(); i++) {
+				final String arg = args.get(i);
+				if (arg.startsWith("--")) {
+					if (i + 1 == args.size()) {
+						throw new IllegalArgumentException("missing value of option %s".formatted(arg));
+					}
+					values.put(arg.substring(2), args.get(++i));
+				} else {
+					arguments.add(arg);
+				}
+			}
+		}
+
+		/**
+		 * Returns the value of an option.
+		 * @param name the name of the option (without leading dashes)
+		 * @param defaultValue the value if the option is not given
+		 * @return the value
+		 */
+		public String get(final String name, final String defaultValue) {
+			return values.getOrDefault(name, defaultValue);
+		}
+
+		/**
+		 * Returns the arguments which are not options.
+		 * @return the arguments
+		 */
+		public List<String> arguments() {
+			return arguments;
+		}
+	}
+
+}
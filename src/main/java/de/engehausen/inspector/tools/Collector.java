@@ -0,0 +1,189 @@
+package de.engehausen.inspector.tools;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.engehausen.inspector.CounterPusher;
+import de.engehausen.inspector.ReportPipeline;
+import de.engehausen.inspector.data.UsageTable;
+
+/**
+ * Collects the counter deltas sent by agents using a {@link CounterPusher}
+ * and aggregates them in memory. The merged counts of all agents can be
+ * obtained as a {@link UsageTable} or written through a {@link ReportPipeline}.
+ */
+public class Collector {
+
+	/** {@code agents} - meta data key of the names of the agents that connected */
+	public static final String KEY_AGENTS = "agents";
+	/** maximum size of a batch in bytes; the connection of an agent sending a larger batch is dropped */
+	public static final int MAX_BATCH_SIZE = 64 << 20;
+
+	protected final Map<String, Map<String, AtomicInteger>> classes;
+	protected final Set<String> agents;
+	protected final ServerSocketChannel server;
+	protected final ExecutorService executor;
+	protected final SocketAddress address;
+
+	/**
+	 * Creates the collector and binds its socket.
+	 * @param listen a port number for a TCP socket on the loopback interface
+	 * (use {@code 0} for any free port), or the path of a Unix domain socket
+	 * @throws IOException in case of error
+	 */
+	public Collector(final String listen) throws IOException {
+		classes = new ConcurrentHashMap<>();
+		agents = ConcurrentHashMap.newKeySet();
+		final SocketAddress requested = CounterPusher.address(listen);
+		if (requested instanceof final UnixDomainSocketAddress path) {
+			Files.deleteIfExists(path.getPath());
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		} else {
+			server = ServerSocketChannel.open();
+		}
+		server.bind(requested);
+		address = server.getLocalAddress();
+		executor = Executors.newCachedThreadPool(runnable -> {
+			final Thread thread = new Thread(runnable, "usage-inspector-collector");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Returns the address the collector listens on.
+	 * @return the bound address
+	 */
+	public SocketAddress address() {
+		return address;
+	}
+
+	/**
+	 * Accepts connections in the background.
+	 */
+	public void start() {
+		executor.execute(() -> {
+			while (server.isOpen()) {
+				try {
+					final SocketChannel channel = server.accept();
+					executor.execute(() -> receive(channel));
+				} catch (IOException e) {
+					// server closed
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops accepting connections.
+	 * @throws IOException in case of error
+	 */
+	public void close() throws IOException {
+		server.close();
+		executor.shutdownNow();
+		if (address instanceof final UnixDomainSocketAddress path) {
+			Files.deleteIfExists(path.getPath());
+		}
+	}
+
+	/**
+	 * Returns the merged counts received so far.
+	 * @param details {@code true} to include the method counts
+	 * @return the usage table
+	 */
+	public UsageTable snapshot(final boolean details) {
+		final UsageTable.Builder builder = new UsageTable.Builder(details);
+		classes.forEach((name, methods) -> {
+			final List<String> names = new ArrayList<>(methods.size());
+			final List<AtomicInteger> counters = new ArrayList<>(methods.size());
+			methods.forEach((method, counter) -> {
+				names.add(method);
+				counters.add(counter);
+			});
+			final int[] counts = new int[counters.size()];
+			int total = 0;
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = counters.get(i).get();
+				total += counts[i];
+			}
+			if (total > 0) {
+				builder.add(name, total, names.toArray(new String[counts.length]), counts, null);
+			}
+		});
+		return builder.build(Map.of(KEY_AGENTS, List.copyOf(agents)));
+	}
+
+	/**
+	 * Applies a batch of names and deltas.
+	 * @param in the batch
+	 * @param counters the counters of the connection by method id
+	 * @throws IOException in case of error
+	 */
+	protected void apply(final DataInputStream in, final Map<Integer, AtomicInteger> counters) throws IOException {
+		for (int names = in.readInt(); names > 0; names--) {
+			final Integer id = Integer.valueOf(in.readInt());
+			final String className = in.readUTF();
+			final String method = in.readUTF();
+			counters.put(id, classes
+				.computeIfAbsent(className, key -> new ConcurrentHashMap<>())
+				.computeIfAbsent(method, key -> new AtomicInteger()));
+		}
+		for (int deltas = in.readInt(); deltas > 0; deltas--) {
+			final AtomicInteger counter = counters.get(Integer.valueOf(in.readInt()));
+			final int delta = in.readInt();
+			if (counter != null) {
+				counter.addAndGet(delta);
+			}
+		}
+	}
+
+	/**
+	 * Reads the batches of a connection until it is closed.
+	 * @param channel the connection
+	 */
+	protected void receive(final SocketChannel channel) {
+		final Map<Integer, AtomicInteger> counters = new HashMap<>();
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+			if (in.readInt() != CounterPusher.MAGIC) {
+				return;
+			}
+			final String agent = in.readUTF();
+			agents.add(agent);
+			while (true) {
+				// a batch is applied only when it was received completely
+				final int size = in.readInt();
+				if (size < 0 || size > MAX_BATCH_SIZE) {
+					System.err.println("dropping connection to agent %s: invalid batch size %d".formatted(agent, Integer.valueOf(size)));
+					return;
+				}
+				final byte[] batch = new byte[size];
+				in.readFully(batch);
+				apply(new DataInputStream(new ByteArrayInputStream(batch)), counters);
+			}
+		} catch (EOFException e) {
+			// agent disconnected
+		} catch (IOException e) {
+			System.err.println("connection to agent failed: %s".formatted(e.getMessage()));
+		}
+	}
+
+}
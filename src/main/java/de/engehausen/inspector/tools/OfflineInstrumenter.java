@@ -0,0 +1,380 @@
+package de.engehausen.inspector.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import de.engehausen.inspector.ClassInstrumenter;
+import de.engehausen.inspector.MethodRegistry;
+import de.engehausen.inspector.Transformer;
+import de.engehausen.inspector.data.Configuration;
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+/**
+ * <p>Instruments jars and class directories ahead of time, using the same class
+ * selection and method probes as the {@link Transformer} does at runtime, see
+ * {@link ClassInstrumenter}. The methods are registered in the order of the
+ * entries, so that the method ids do not depend on the scheduling; the probes are
+ * then inserted in parallel.</p>
+ * <p>The method ids of the probes are written to a manifest; the agent started
+ * with {@link Configuration#ARG_MANIFEST} uses it to count and report without
+ * transforming classes at runtime. All inputs of an application must be
+ * instrumented in one run, so that the method ids are unique.</p>
+ */
+public class OfflineInstrumenter {
+
+	private static final String CLASS_SUFFIX = ".class";
+	private static final String JAR_SUFFIX = ".jar";
+	private static final Pattern CLASSES = Pattern.compile("^(BOOT-INF|WEB-INF)/classes/");
+	private static final Pattern SIGNATURE = Pattern.compile("META-INF/[^/]+\\.(SF|RSA|DSA|EC)", Pattern.CASE_INSENSITIVE);
+
+	protected final List<String> inputs;
+	protected final MethodRegistry registry;
+	protected final ClassInstrumenter instrumenter;
+	protected final List<String> issues;
+	protected final ThreadLocal<ClassPool> classPools;
+
+	/**
+	 * Creates the instrumenter.
+	 * @param agentArgs the agent arguments, see {@link Transformer}
+	 * @param inputs the jars and class directories to instrument
+	 * @throws UncheckedIOException if the configuration cannot be read
+	 */
+	public OfflineInstrumenter(final String agentArgs, final List<String> inputs) {
+		this.inputs = inputs;
+		// this will be accessed only with synchronization
+		issues = new ArrayList<>();
+		registry = new MethodRegistry();
+		// the probes are not switched by the governor ahead of time
+		instrumenter = new ClassInstrumenter(Transformer.configuration(agentArgs), registry, this::recordIssue, registry::memory, id -> null);
+		// the class pools are not thread-safe, each worker reads the classes with its own
+		classPools = ThreadLocal.withInitial(() -> {
+			final ClassPool pool = new ClassPool(true);
+			pool.childFirstLookup = true;
+			for (final String input : inputs) {
+				try {
+					pool.insertClassPath(input);
+				} catch (NotFoundException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return pool;
+		});
+	}
+
+	/**
+	 * Instruments all inputs.
+	 * @param out the directory to write the instrumented jars and directories to
+	 * @param manifest the file to write the method manifest to
+	 * @throws IOException in case of error
+	 */
+	public void instrument(final File out, final File manifest) throws IOException {
+		for (final String input : inputs) {
+			final File source = new File(input);
+			final File target = new File(out, source.getName());
+			if (source.getCanonicalFile().equals(target.getCanonicalFile())) {
+				throw new IOException("cannot overwrite input %s".formatted(input));
+			}
+			if (source.isDirectory()) {
+				instrumentDirectory(source.toPath(), target.toPath());
+			} else {
+				instrumentJar(source, target);
+			}
+		}
+		new ObjectMapper()
+			.enable(SerializationFeature.INDENT_OUTPUT)
+			.writeValue(manifest, registry.classes());
+	}
+
+	/**
+	 * Returns the issues seen during instrumentation.
+	 * @return the issues
+	 */
+	public List<String> issues() {
+		synchronized (issues) {
+			return new ArrayList<>(issues);
+		}
+	}
+
+	/**
+	 * Returns the number of instrumented methods.
+	 * @return the number of instrumented methods
+	 */
+	public int methods() {
+		return registry.size();
+	}
+
+	/**
+	 * Instruments a single class, if it is selected by the configuration and
+	 * not skipped by the rules for generated classes.
+	 * @param className the name of the class, separated by {@code /}
+	 * @param classfileBuffer the classfile contents
+	 * @return the potentially modified classfile
+	 */
+	public byte[] instrument(final String className, final byte[] classfileBuffer) {
+		return Optional
+			.ofNullable(register(className, classfileBuffer))
+			.map(registration -> insert(registration, classfileBuffer))
+			.orElse(classfileBuffer);
+	}
+
+	/**
+	 * Instruments the classes of a jar and writes the resulting jar.
+	 * The signature files are dropped, as the signatures do not match anymore.
+	 * Stored entries are kept stored, and nested jars (e.g. the libraries of a
+	 * Spring Boot jar) are instrumented as well.
+	 * @param source the jar to instrument
+	 * @param target the jar to write
+	 * @throws IOException in case of error
+	 */
+	protected void instrumentJar(final File source, final File target) throws IOException {
+		Files.createDirectories(target.toPath().getParent());
+		try (final JarFile jar = new JarFile(source);
+			final JarOutputStream out = new JarOutputStream(Files.newOutputStream(target.toPath()))) {
+			final List<JarEntry> entries = Collections
+				.list(jar.entries())
+				.stream()
+				.filter(entry -> !SIGNATURE.matcher(entry.getName()).matches())
+				.toList();
+			final List<byte[]> contents = instrument(
+				entries.stream().map(JarEntry::getName).toList(),
+				entries.parallelStream().map(entry -> read(jar, entry)).toList());
+			write(out, entries, contents);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Instruments the classes of a directory and copies all other files.
+	 * @param source the directory to instrument
+	 * @param target the directory to write
+	 * @throws IOException in case of error
+	 */
+	protected void instrumentDirectory(final Path source, final Path target) throws IOException {
+		final List<Path> files;
+		try (final Stream<Path> walk = Files.walk(source)) {
+			// the order of the files determines the method ids
+			files = walk.filter(Files::isRegularFile).sorted().toList();
+		}
+		try {
+			final List<byte[]> contents = instrument(
+				files.stream().map(file -> source.relativize(file).toString().replace(File.separatorChar, '/')).toList(),
+				files.parallelStream().map(OfflineInstrumenter::read).toList());
+			IntStream.range(0, files.size()).parallel().forEach(i -> {
+				try {
+					final Path destination = target.resolve(source.relativize(files.get(i)));
+					Files.createDirectories(destination.getParent());
+					Files.write(destination, contents.get(i));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Instruments the classes and nested jars among the given files. The classes are
+	 * registered in the order of the files, followed by the classes of the nested jars;
+	 * the probes are inserted in parallel.
+	 * @param fileNames the names of the files relative to the jar or directory
+	 * @param contents the contents of the files
+	 * @return the potentially modified contents of the files
+	 */
+	protected List<byte[]> instrument(final List<String> fileNames, final List<byte[]> contents) {
+		final Registration[] registrations = new Registration[fileNames.size()];
+		for (int i = 0; i < registrations.length; i++) {
+			if (instrumentable(fileNames.get(i))) {
+				registrations[i] = register(className(fileNames.get(i)), contents.get(i));
+			}
+		}
+		final List<byte[]> result = new ArrayList<>(IntStream
+			.range(0, registrations.length)
+			.parallel()
+			.mapToObj(i -> registrations[i] != null ? insert(registrations[i], contents.get(i)) : contents.get(i))
+			.toList());
+		for (int i = 0; i < registrations.length; i++) {
+			if (fileNames.get(i).endsWith(JAR_SUFFIX)) {
+				result.set(i, instrumentNested(fileNames.get(i), contents.get(i)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Instruments the classes of a nested jar.
+	 * @param fileName the name of the nested jar
+	 * @param jar the contents of the nested jar
+	 * @return the instrumented nested jar, or the original one if it cannot be read
+	 */
+	protected byte[] instrumentNested(final String fileName, final byte[] jar) {
+		final List<ZipEntry> entries = new ArrayList<>();
+		final List<byte[]> contents = new ArrayList<>();
+		try (final ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(jar))) {
+			for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+				if (!SIGNATURE.matcher(entry.getName()).matches()) {
+					entries.add(entry);
+					contents.add(in.readAllBytes());
+				}
+			}
+			final ByteArrayOutputStream result = new ByteArrayOutputStream(jar.length);
+			try (final ZipOutputStream out = new ZipOutputStream(result)) {
+				write(out, entries, instrument(entries.stream().map(ZipEntry::getName).toList(), contents));
+			}
+			return result.toByteArray();
+		} catch (IOException e) {
+			recordIssue("cannot instrument nested jar %s, copied unchanged: %s=%s".formatted(fileName, e.getClass().getName(), e.getMessage()));
+			return jar;
+		}
+	}
+
+	/**
+	 * Registers the methods of a class to count, if it is selected by the configuration
+	 * and not skipped by the rules for generated classes.
+	 * @param className the name of the class, separated by {@code /}
+	 * @param classfileBuffer the classfile contents
+	 * @return the registration, or {@code null} if the class is not instrumented
+	 */
+	protected Registration register(final String className, final byte[] classfileBuffer) {
+		if (instrumenter.untransformable(className) || instrumenter.reject(className)) {
+			return null;
+		}
+		final String countedName = instrumenter.countedName(className);
+		if (countedName == null) {
+			return null;
+		}
+		if (countedName.equals(className) && registry.contains(className)) {
+			recordIssue("duplicated class %s".formatted(className));
+		}
+		try {
+			final CtClass srcClass = classPools.get().makeClass(new ByteArrayInputStream(classfileBuffer));
+			try {
+				return instrumenter.modifiable(srcClass) ?
+					new Registration(srcClass.getName(), countedName, instrumenter.register(countedName, instrumenter.select(srcClass), 0)) :
+					null;
+			} finally {
+				srcClass.detach();
+			}
+		} catch (IOException|RuntimeException e) {
+			recordIssue("cannot instrument %s: %s=%s".formatted(className, e.getClass().getName(), e.getMessage()));
+		}
+		return null;
+	}
+
+	/**
+	 * Inserts the probes of a registered class.
+	 * @param registration the registration of the class
+	 * @param classfileBuffer the classfile contents
+	 * @return the potentially modified classfile
+	 */
+	protected byte[] insert(final Registration registration, final byte[] classfileBuffer) {
+		try {
+			final CtClass srcClass = classPools.get().makeClass(new ByteArrayInputStream(classfileBuffer));
+			try {
+				return Optional
+					.ofNullable(instrumenter.insert(srcClass, instrumenter.select(srcClass), registration.ids(), registration.countedName()))
+					.orElse(classfileBuffer);
+			} finally {
+				srcClass.detach();
+			}
+		} catch (CannotCompileException|IOException|RuntimeException e) {
+			recordIssue("cannot instrument %s: %s=%s".formatted(registration.name(), e.getClass().getName(), e.getMessage()));
+		}
+		return classfileBuffer;
+	}
+
+	/**
+	 * Records an issue that occurred during instrumentation.
+	 * @param message the message to record
+	 */
+	protected void recordIssue(final String message) {
+		synchronized (issues) {
+			issues.add(message);
+		}
+	}
+
+	private static void write(final ZipOutputStream out, final List<? extends ZipEntry> entries, final List<byte[]> contents) throws IOException {
+		for (int i = 0; i < entries.size(); i++) {
+			final ZipEntry entry = entries.get(i);
+			final byte[] bytes = contents.get(i);
+			final JarEntry next = new JarEntry(entry.getName());
+			next.setTime(entry.getTime());
+			if (entry.getMethod() == ZipEntry.STORED) {
+				// stored entries must stay stored, e.g. Spring Boot reads its nested jars in place
+				final CRC32 crc = new CRC32();
+				crc.update(bytes);
+				next.setMethod(ZipEntry.STORED);
+				next.setSize(bytes.length);
+				next.setCompressedSize(bytes.length);
+				next.setCrc(crc.getValue());
+			}
+			out.putNextEntry(next);
+			out.write(bytes);
+			out.closeEntry();
+		}
+	}
+
+	private static byte[] read(final JarFile jar, final JarEntry entry) {
+		try (final InputStream in = jar.getInputStream(entry)) {
+			return in.readAllBytes();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static byte[] read(final Path file) {
+		try {
+			return Files.readAllBytes(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static boolean instrumentable(final String fileName) {
+		// multi-release variants and module descriptors are copied unchanged
+		return fileName.endsWith(CLASS_SUFFIX) &&
+			!fileName.startsWith("META-INF/") &&
+			!fileName.endsWith("module-info.class");
+	}
+
+	private static String className(final String fileName) {
+		// the classes of Spring Boot jars and web archives are found below a prefix
+		return CLASSES.matcher(fileName.substring(0, fileName.length() - CLASS_SUFFIX.length())).replaceFirst("");
+	}
+
+	/**
+	 * A class whose methods are registered, with the ids of the probes to insert.
+	 * @param name the name of the class
+	 * @param countedName the name the class is counted under
+	 * @param ids the ids of the probes of the selected methods
+	 */
+	protected record Registration(String name, String countedName, int[] ids) {}
+
+}
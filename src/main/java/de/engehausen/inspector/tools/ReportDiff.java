@@ -0,0 +1,223 @@
+package de.engehausen.inspector.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.engehausen.inspector.data.Change;
+import de.engehausen.inspector.data.ClassInfo;
+import de.engehausen.inspector.data.Report;
+
+/**
+ * <p>Compares two streams of classes sorted by name, e.g. read by {@link ReportReader}s,
+ * and writes a {@link Report} of the changes. Only one class per input is held in memory.</p>
+ * <p>In the resulting report, {@code totalCalls} and {@code methodCalls} are the absolute
+ * changes (negative if fewer calls were made), so the report can be processed by the
+ * existing reporters. The {@code change} of each class has the counts of both reports
+ * and the relative changes.</p>
+ */
+public class ReportDiff {
+
+	/** {@code minAbsolute} - meta data key of the absolute change threshold */
+	public static final String KEY_MIN_ABSOLUTE = "minAbsolute";
+	/** {@code minRelative} - meta data key of the relative change threshold */
+	public static final String KEY_MIN_RELATIVE = "minRelative";
+
+	protected final int minAbsolute;
+	protected final double minRelative;
+
+	/**
+	 * Creates the comparison.
+	 * @param minAbsolute the minimum absolute change of calls (in either direction) to be reported
+	 * @param minRelative the minimum relative change of calls (in either direction) to be reported;
+	 * changes from zero calls always pass this threshold
+	 */
+	public ReportDiff(final int minAbsolute, final double minRelative) {
+		this.minAbsolute = minAbsolute;
+		this.minRelative = minRelative;
+	}
+
+	/**
+	 * Compares two sorted streams of classes and writes the report of changes.
+	 * @param before the classes of the earlier report(s)
+	 * @param after the classes of the later report(s)
+	 * @param out the output stream, which is not closed
+	 * @param meta the meta data of the resulting report, may be {@code null}
+	 * @throws IOException in case of error
+	 */
+	public void diff(
+		final Iterator<Map.Entry<String, ClassInfo>> before,
+		final Iterator<Map.Entry<String, ClassInfo>> after,
+		final OutputStream out,
+		final Map<String, Object> meta) throws IOException {
+		final ObjectMapper mapper = new ObjectMapper().configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+		try (final JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+			generator.writeStartObject();
+			generator.writeObjectFieldStart("classes");
+			final Peeking earlier = new Peeking(before);
+			final Peeking later = new Peeking(after);
+			while (earlier.peek() != null || later.peek() != null) {
+				final int order = earlier.peek() == null ? 1 :
+					later.peek() == null ? -1 :
+					earlier.peek().getKey().compareTo(later.peek().getKey());
+				final String name = order <= 0 ? earlier.peek().getKey() : later.peek().getKey();
+				final ClassInfo info = diff(
+					order <= 0 ? earlier.next().getValue() : null,
+					order >= 0 ? later.next().getValue() : null);
+				if (info != null) {
+					generator.writeObjectField(name, info);
+				}
+			}
+			generator.writeEndObject();
+			final Map<String, Object> metaNext = new LinkedHashMap<>();
+			Optional
+				.ofNullable(meta)
+				.ifPresent(metaNext::putAll);
+			metaNext.put(KEY_MIN_ABSOLUTE, Integer.valueOf(minAbsolute));
+			metaNext.put(KEY_MIN_RELATIVE, Double.valueOf(minRelative));
+			generator.writeObjectField("meta", metaNext);
+			generator.writeEndObject();
+		}
+	}
+
+	/**
+	 * Compares the usage of a class.
+	 * @param before the earlier usage, may be {@code null} if the class was not used
+	 * @param after the later usage, may be {@code null} if the class is not used anymore
+	 * @return the change as class information, or {@code null} if neither the class
+	 * nor any of its methods changed beyond the thresholds
+	 */
+	public ClassInfo diff(final ClassInfo before, final ClassInfo after) {
+		final Map<String, AtomicInteger> callsBefore = calls(before);
+		final Map<String, AtomicInteger> callsAfter = calls(after);
+		final Map<String, AtomicInteger> methodCalls = new LinkedHashMap<>();
+		final Map<String, Change> methodChanges = new LinkedHashMap<>();
+		final TreeSet<String> methods = new TreeSet<>(callsBefore.keySet());
+		methods.addAll(callsAfter.keySet());
+		for (final String method : methods) {
+			final Change change = new Change(
+				count(callsBefore.get(method)),
+				count(callsAfter.get(method)),
+				null);
+			if (significant(change)) {
+				methodCalls.put(method, new AtomicInteger(change.absolute()));
+				methodChanges.put(method, change);
+			}
+		}
+		final Change change = new Change(
+			before != null ? before.totalCalls() : 0,
+			after != null ? after.totalCalls() : 0,
+			methodChanges.isEmpty() ? null : methodChanges);
+		if (!significant(change) && methodChanges.isEmpty()) {
+			return null;
+		}
+		final boolean details = (before != null && before.methodCalls() != null) || (after != null && after.methodCalls() != null);
+		return new ClassInfo(change.absolute(), details ? methodCalls : null, null, change, null, null);
+	}
+
+	/**
+	 * Checks whether a change passes the thresholds.
+	 * @param change the change to check
+	 * @return {@code true} if the change is to be reported
+	 */
+	protected boolean significant(final Change change) {
+		final Double relative = change.relative();
+		return Math.abs(change.absolute()) >= minAbsolute &&
+			change.absolute() != 0 &&
+			(relative == null || Math.abs(relative.doubleValue()) >= minRelative);
+	}
+
+	private static Map<String, AtomicInteger> calls(final ClassInfo info) {
+		return info != null && info.methodCalls() != null ? info.methodCalls() : Collections.emptyMap();
+	}
+
+	private static int count(final AtomicInteger value) {
+		return value != null ? value.get() : 0;
+	}
+
+	/**
+	 * Merges several streams of classes sorted by name into one sorted stream,
+	 * summing up the calls of classes present in more than one stream. This
+	 * can be used to compare the reports of several VMs.
+	 * @param sources the sorted streams
+	 * @return the merged stream
+	 */
+	public static Iterator<Map.Entry<String, ClassInfo>> merge(final List<? extends Iterator<Map.Entry<String, ClassInfo>>> sources) {
+		if (sources.size() == 1) {
+			return sources.get(0);
+		}
+		final List<Peeking> inputs = sources.stream().map(Peeking::new).toList();
+		return new Iterator<>() {
+			@Override
+			public boolean hasNext() {
+				return inputs.stream().anyMatch(input -> input.peek() != null);
+			}
+
+			@Override
+			public Map.Entry<String, ClassInfo> next() {
+				final String name = inputs
+					.stream()
+					.map(Peeking::peek)
+					.filter(entry -> entry != null)
+					.map(Map.Entry::getKey)
+					.min(String::compareTo)
+					.orElseThrow(NoSuchElementException::new);
+				int total = 0;
+				Map<String, AtomicInteger> methodCalls = null;
+				for (final Peeking input : inputs) {
+					if (input.peek() != null && name.equals(input.peek().getKey())) {
+						final ClassInfo info = input.next().getValue();
+						total += info.totalCalls();
+						if (info.methodCalls() != null) {
+							if (methodCalls == null) {
+								methodCalls = new LinkedHashMap<>();
+							}
+							final Map<String, AtomicInteger> target = methodCalls;
+							info.methodCalls().forEach((method, count) -> target
+								.computeIfAbsent(method, key -> new AtomicInteger())
+								.addAndGet(count.get()));
+						}
+					}
+				}
+				return new AbstractMap.SimpleImmutableEntry<>(name, new ClassInfo(total, methodCalls));
+			}
+		};
+	}
+
+	/**
+	 * Iterator wrapper allowing to look at the next element.
+	 */
+	private static class Peeking {
+
+		private final Iterator<Map.Entry<String, ClassInfo>> source;
+		private Map.Entry<String, ClassInfo> head;
+
+		Peeking(final Iterator<Map.Entry<String, ClassInfo>> source) {
+			this.source = source;
+			head = source.hasNext() ? source.next() : null;
+		}
+
+		Map.Entry<String, ClassInfo> peek() {
+			return head;
+		}
+
+		Map.Entry<String, ClassInfo> next() {
+			final Map.Entry<String, ClassInfo> result = head;
+			head = source.hasNext() ? source.next() : null;
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+package de.engehausen.inspector.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.engehausen.inspector.data.ClassInfo;
+import de.engehausen.inspector.data.Report;
+
+/**
+ * Streams the classes of a {@link Report} JSON file one at a time, so that
+ * only a single {@link ClassInfo} is held in memory. The classes are expected
+ * to be sorted by name, which is the case for reports written by the agent;
+ * an {@link IllegalStateException} is thrown when this is not the case.
+ */
+public class ReportReader implements Iterator<Map.Entry<String, ClassInfo>>, Closeable {
+
+	private static final String FIELD_CLASSES = "classes";
+	private static final String FIELD_META = "meta";
+
+	protected final ObjectMapper mapper;
+	protected final JsonParser parser;
+	protected final String source;
+	protected Map<String, Object> meta;
+	private Map.Entry<String, ClassInfo> next;
+	private String last;
+	private boolean inClasses;
+	private boolean unsorted;
+
+	/**
+	 * Opens the report file and positions the reader at its first class.
+	 * @param file the report file
+	 * @throws IOException in case of error
+	 */
+	public ReportReader(final File file) throws IOException {
+		mapper = new ObjectMapper();
+		parser = mapper.getFactory().createParser(file);
+		source = file.getPath();
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new IOException("%s is not a report".formatted(source));
+		}
+		inClasses = seekClasses();
+		next = fetch();
+	}
+
+	/**
+	 * Returns the meta data of the report. This is only known once the
+	 * meta data was read, which is at the latest when all classes were read.
+	 * @return the meta data, may be {@code null}
+	 */
+	public Map<String, Object> meta() {
+		return meta;
+	}
+
+	/**
+	 * Returns the path of the report file.
+	 * @return the path
+	 */
+	public String source() {
+		return source;
+	}
+
+	/**
+	 * Returns whether the classes read so far are sorted.
+	 * @return {@code false} once a class out of order was found
+	 */
+	public boolean sorted() {
+		return !unsorted;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map.Entry<String, ClassInfo> next() {
+		if (next == null) {
+			throw new NoSuchElementException();
+		}
+		final Map.Entry<String, ClassInfo> result = next;
+		try {
+			next = fetch();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		parser.close();
+	}
+
+	/**
+	 * Reads the top level fields until the classes are found.
+	 * @return {@code true} if the classes were found
+	 * @throws IOException in case of error
+	 */
+	private boolean seekClasses() throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String name = parser.getCurrentName();
+			final JsonToken token = parser.nextToken();
+			if (FIELD_CLASSES.equals(name) && token == JsonToken.START_OBJECT) {
+				return true;
+			} else if (FIELD_META.equals(name) && token == JsonToken.START_OBJECT) {
+				meta = mapper.readValue(parser, new TypeReference<Map<String, Object>>() {});
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the next class.
+	 * @return the next class or {@code null} if there are no more classes
+	 * @throws IOException in case of error
+	 */
+	private Map.Entry<String, ClassInfo> fetch() throws IOException {
+		if (!inClasses) {
+			return null;
+		}
+		if (parser.nextToken() != JsonToken.FIELD_NAME) {
+			inClasses = false;
+			seekClasses();
+			return null;
+		}
+		final String name = parser.getCurrentName();
+		parser.nextToken();
+		final ClassInfo info = mapper.readValue(parser, ClassInfo.class);
+		if (last != null && last.compareTo(name) >= 0) {
+			unsorted = true;
+			throw new IllegalStateException("classes of %s are not sorted: %s follows %s".formatted(source, name, last));
+		}
+		last = name;
+		return new AbstractMap.SimpleImmutableEntry<>(name, info);
+	}
+
+}
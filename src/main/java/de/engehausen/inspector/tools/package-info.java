@@ -0,0 +1,4 @@
+/**
+ * Command line tools shipped with the agent.
+ */
+package de.engehausen.inspector.tools;
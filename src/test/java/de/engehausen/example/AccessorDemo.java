@@ -0,0 +1,27 @@
+package de.engehausen.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AccessorDemo {
+
+	@Test
+	void performAccess() {
+		final Value value = new Value();
+		value.setValue(42);
+		Assertions.assertEquals(42, value.getValue());
+	}
+
+	static class Value {
+
+		private int value;
+
+		int getValue() {
+			return value;
+		}
+
+		void setValue(final int value) {
+			this.value = value;
+		}
+	}
+}
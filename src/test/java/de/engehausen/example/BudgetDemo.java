@@ -0,0 +1,25 @@
+package de.engehausen.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BudgetDemo {
+
+	@Test
+	void performCalls() {
+		// with a budget of one method, the fixture is counted at class level
+		final Fixture fixture = new Fixture();
+		Assertions.assertEquals(4, fixture.twice() + fixture.twice());
+	}
+
+	static class Fixture {
+
+		int once() {
+			return Integer.parseInt("1");
+		}
+
+		int twice() {
+			return once() + once();
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package de.engehausen.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class InliningDemo {
+
+	private static int increment(final int v) {
+		return v + 1;
+	}
+
+	@Test
+	void performIncrement() {
+		Assertions.assertEquals(2, increment(1));
+	}
+}
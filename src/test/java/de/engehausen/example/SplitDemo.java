@@ -0,0 +1,71 @@
+package de.engehausen.example;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.function.IntSupplier;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SplitDemo {
+
+	// keeps the first loader alive until the report is written
+	static ClassLoader live;
+
+	@Test
+	void performCalls() throws ReflectiveOperationException, InterruptedException {
+		live = new PluginLoader();
+		Assertions.assertEquals(2, call(live, 2));
+		ClassLoader unloaded = new PluginLoader();
+		Assertions.assertEquals(3, call(unloaded, 3));
+		final WeakReference<ClassLoader> reference = new WeakReference<>(unloaded);
+		unloaded = null;
+		for (int i = 0; i < 100 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(50L);
+		}
+		Assertions.assertNull(reference.get(), "loader not collected");
+	}
+
+	private static int call(final ClassLoader loader, final int times) throws ReflectiveOperationException {
+		final IntSupplier plugin = (IntSupplier) loader
+			.loadClass(Plugin.class.getName())
+			.getDeclaredConstructor()
+			.newInstance();
+		int result = 0;
+		for (int i = 0; i < times; i++) {
+			result += plugin.getAsInt();
+		}
+		return result;
+	}
+
+	public static class Plugin implements IntSupplier {
+
+		@Override
+		public int getAsInt() {
+			return Integer.parseInt("1");
+		}
+	}
+
+	/**
+	 * Loads the plugin class itself, and all other classes from the loader of the demo.
+	 */
+	static class PluginLoader extends URLClassLoader {
+
+		PluginLoader() {
+			super("plugin", new URL[] { SplitDemo.class.getProtectionDomain().getCodeSource().getLocation() }, SplitDemo.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+			if (!Plugin.class.getName().equals(name)) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				final Class<?> loaded = findLoadedClass(name);
+				return loaded != null ? loaded : findClass(name);
+			}
+		}
+	}
+}
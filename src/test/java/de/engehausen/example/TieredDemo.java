@@ -0,0 +1,33 @@
+package de.engehausen.example;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.engehausen.inspector.Transformer;
+
+public class TieredDemo {
+
+	@Test
+	void performUpgrade() throws InterruptedException {
+		// with tiered instrumentation, the constructor requests the upgrade of the class
+		final Fixture fixture = new Fixture();
+		Assertions.assertTrue(Transformer.awaitUpgrades(10000L), "upgrade not done");
+		Assertions.assertEquals(2, fixture.work() + fixture.work());
+		// loaded, but never used, so it keeps its class-level probe
+		Assertions.assertEquals("Idle", Idle.class.getSimpleName());
+	}
+
+	static class Fixture {
+
+		int work() {
+			return Integer.parseInt("1");
+		}
+	}
+
+	static class Idle {
+
+		int work() {
+			return Integer.parseInt("1");
+		}
+	}
+}
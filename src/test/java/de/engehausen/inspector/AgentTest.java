@@ -2,9 +2,11 @@ package de.engehausen.inspector;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Assertions;
@@ -13,7 +15,9 @@ import org.junit.jupiter.api.Test;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import de.engehausen.inspector.data.ClassInfo;
+import de.engehausen.inspector.data.RecentUsage;
 import de.engehausen.inspector.data.Report;
+import de.engehausen.inspector.reporters.FileCorrelator;
 
 class AgentTest {
 
@@ -50,6 +54,73 @@ class AgentTest {
 		Assertions.assertTrue(illegal.isEmpty(), "report must not contain excluded classes");
 	}
 
+	@Test
+	void verifyNotInstrumented() throws IOException {
+		final Report report = new ObjectMapper().readValue(new File("target/report.json"), Report.class);
+		// the class only has accessors, which are skipped
+		final ClassInfo info = report.classes().get("de/engehausen/example/AccessorDemo$Value");
+		Assertions.assertNotNull(info, "class without instrumented methods not reported");
+		Assertions.assertEquals(0, info.totalCalls());
+		Assertions.assertEquals(List.of("getValue()I", "setValue(I)V"), info.notInstrumented().stream().sorted().toList());
+	}
+
+	@Test
+	void verifyInliningImpact() throws IOException {
+		final Report report = new ObjectMapper().readValue(new File("target/report.json"), Report.class);
+		Assertions.assertNotNull(report.meta(), "no meta data reported");
+		final Object impacts = report.meta().get(Report.KEY_INLINING);
+		Assertions.assertTrue(impacts instanceof List<?>, "no inlining impacts reported");
+		// the probe adds at least four bytes, which pushes the four-byte method over MaxTrivialSize (6)
+		final Map<?, ?> impact = ((List<?>) impacts)
+			.stream()
+			.map(Map.class::cast)
+			.filter(candidate -> "de/engehausen/example/InliningDemo".equals(candidate.get("className")) && "increment(I)I".equals(candidate.get("method")))
+			.findFirst()
+			.orElse(null);
+		Assertions.assertNotNull(impact, "increment(I)I must cross an inlining threshold");
+		Assertions.assertEquals("MaxTrivialSize", impact.get("threshold"));
+		Assertions.assertEquals(4, ((Number) impact.get("originalSize")).intValue());
+	}
+
+	@Test
+	void verifyRecentUsage() throws IOException {
+		final Report report = new ObjectMapper().readValue(new File("target/report.json"), Report.class);
+		Assertions.assertNotNull(report.meta().get(Report.KEY_WINDOWS), "no windows reported");
+		final RecentUsage recent = report.classes().get(EXPECTED_CLASS).recent();
+		Assertions.assertNotNull(recent, "no recent usage reported");
+		// the test run is shorter than a window
+		Assertions.assertEquals(10, recent.totalCalls());
+		Assertions.assertEquals(2, recent.methodCalls().get("twice()I").get());
+		Assertions.assertEquals(10, recent.windows()[recent.windows().length - 1]);
+	}
+
+	@Test
+	void verifyThreadGroups() throws IOException {
+		final Report report = new ObjectMapper().readValue(new File("target/report.json"), Report.class);
+		final Map<String, ClassInfo> groups = report.classes().get(EXPECTED_CLASS).groups();
+		Assertions.assertNotNull(groups, "no thread groups reported");
+		Assertions.assertEquals(10, groups.get("main").totalCalls());
+		Assertions.assertNull(groups.get(Transformer.GROUP_OTHER));
+	}
+
+	@Test
+	void verifyTimeline() throws IOException {
+		final Report report = new ObjectMapper().readValue(new File("target/report.json"), Report.class);
+		final List<?> timeline = (List<?>) report.meta().get(Report.KEY_TIMELINE);
+		Assertions.assertNotNull(timeline, "no timeline reported");
+		final List<String> methods = timeline
+			.stream()
+			.map(Map.class::cast)
+			.filter(call -> EXPECTED_CLASS.equals(call.get("className")))
+			.map(call -> (String) call.get("method"))
+			.toList();
+		// the test calls once() and then twice()
+		final int test = methods.indexOf("performCalls()V");
+		Assertions.assertTrue(test >= 0, "test method not in timeline");
+		Assertions.assertTrue(test < methods.indexOf("once()Z"));
+		Assertions.assertTrue(methods.indexOf("once()Z") < methods.indexOf("twice()I"));
+	}
+
 	@Test
 	void verifySourceCorrelator() throws IOException {
 		final Report report = new ObjectMapper().readValue(new File("target/report-with-sources.json"), Report.class);
@@ -60,5 +131,81 @@ class AgentTest {
 		Assertions.assertNotNull(info, () -> "%s not recorded".formatted(EXPECTED_CLASS_SOURCE));
 	}
 
+	@Test
+	void verifyReporterChain() throws IOException {
+		final Report report = new ObjectMapper().readValue(new File("target/report-chain-sources.json"), Report.class);
+		Assertions.assertNotNull(report.classes().get(EXPECTED_CLASS_SOURCE), () -> "%s not recorded".formatted(EXPECTED_CLASS_SOURCE));
+		Assertions.assertTrue(report.meta() == null || !report.meta().containsKey(FileCorrelator.KEY_CORRELATED), "pipeline marker in output");
+		final List<?> weights = new ObjectMapper().readValue(new File("target/report-percentile.json"), List.class);
+		Assertions.assertTrue(weights
+			.stream()
+			.map(Map.class::cast)
+			.anyMatch(weight -> EXPECTED_CLASS_SOURCE.equals(weight.get("path"))),
+			() -> "%s not weighted".formatted(EXPECTED_CLASS_SOURCE));
+	}
+
+	@Test
+	void verifyTieredResults() throws IOException {
+		final Report report = new ObjectMapper().readValue(new File("target/report-tiered.json"), Report.class);
+		Assertions.assertNotNull(report.meta(), "no meta data reported");
+		final Map<?, ?> tiered = (Map<?, ?>) report.meta().get(Report.KEY_TIERED);
+		Assertions.assertNotNull(tiered, "no tiered statistics reported");
+		// the demo and its fixture are upgraded, the idle class keeps its class-level probe
+		Assertions.assertEquals(1, ((Number) tiered.get(Report.KEY_TIERED_CLASSES)).intValue());
+		Assertions.assertEquals(2, ((Number) tiered.get(Report.KEY_TIERED_UPGRADED)).intValue());
+		// the constructor call before the upgrade is kept as the class-level count
+		final ClassInfo info = report.classes().get("de/engehausen/example/TieredDemo$Fixture");
+		Assertions.assertNotNull(info, "fixture not recorded");
+		Assertions.assertEquals(1, info.methodCalls().get(MethodRegistry.CLASS_PROBE).get());
+		Assertions.assertEquals(2, info.methodCalls().get("work()I").get());
+		Assertions.assertEquals(3, info.totalCalls());
+	}
+
+	@Test
+	void verifyBudget() throws IOException {
+		final Report report = new ObjectMapper().readValue(new File("target/report-budget.json"), Report.class);
+		Assertions.assertNotNull(report.meta(), "no meta data reported");
+		final Map<?, ?> budget = (Map<?, ?>) report.meta().get(Report.KEY_BUDGET);
+		Assertions.assertNotNull(budget, "no budget reported");
+		// the demo class itself used up the budget
+		Assertions.assertEquals(List.of("de/engehausen/example/BudgetDemo$Fixture"), budget.get(Report.KEY_BUDGET_DEGRADED));
+		Assertions.assertTrue(((Number) budget.get(Report.KEY_BUDGET_METHODS)).intValue() > 0, "no methods reported");
+		Assertions.assertTrue(((Number) budget.get(Report.KEY_BUDGET_MEMORY)).longValue() > 0L, "no memory reported");
+		// the calls of all methods of the degraded class are counted by its class-level counter
+		final ClassInfo info = report.classes().get("de/engehausen/example/BudgetDemo$Fixture");
+		Assertions.assertNotNull(info, "degraded class not recorded");
+		Assertions.assertEquals(Map.of(MethodRegistry.CLASS_PROBE, Integer.valueOf(6)), info
+			.methodCalls()
+			.entrySet()
+			.stream()
+			.collect(Collectors.toMap(Map.Entry::getKey, entry -> Integer.valueOf(entry.getValue().get()))));
+		Assertions.assertEquals(6, info.totalCalls());
+	}
+
+	@Test
+	void verifySplitLoaders() throws IOException {
+		final Report report = new ObjectMapper().readValue(new File("target/report-split.json"), Report.class);
+		final String plugin = "de/engehausen/example/SplitDemo$Plugin";
+		// the class of the live loader is reported with the name of its loader
+		final List<Map.Entry<String, ClassInfo>> live = report
+			.classes()
+			.entrySet()
+			.stream()
+			.filter(entry -> entry.getKey().startsWith(plugin + "@plugin#"))
+			.toList();
+		Assertions.assertEquals(1, live.size(), () -> "unexpected classes %s".formatted(report.classes().keySet()));
+		Assertions.assertEquals(2, live.get(0).getValue().totalCalls());
+		// the class of the collected loader keeps its counts
+		final ClassInfo unloaded = report.classes().get(plugin + "@unloaded");
+		Assertions.assertNotNull(unloaded, "unloaded class not recorded");
+		Assertions.assertEquals(3, unloaded.methodCalls().get("getAsInt()I").get());
+		Assertions.assertNotNull(report.classes().get("de/engehausen/example/SplitDemo"), "class of the system loader not recorded");
+		Assertions.assertNotNull(report.meta(), "no meta data reported");
+		final Map<?, ?> loaders = (Map<?, ?>) report.meta().get(Report.KEY_LOADERS);
+		Assertions.assertNotNull(loaders, "no loaders reported");
+		Assertions.assertTrue(((Number) loaders.get(Report.KEY_LOADERS_LIVE)).intValue() > 0, "no live loader");
+		Assertions.assertTrue(((Number) loaders.get(Report.KEY_LOADERS_UNLOADED)).intValue() > 0, "no unloaded loader");
+	}
+
 	private static record Entry(String key, int value) {};
 }
@@ -0,0 +1,79 @@
+package de.engehausen.inspector;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ClassUpgraderTest {
+
+	@Test
+	void testUpgradeBatch() {
+		final List<Class<?>> retransformed = new ArrayList<>();
+		final List<String> issues = new ArrayList<>();
+		final Instrumentation instrumentation = (Instrumentation) Proxy.newProxyInstance(
+			getClass().getClassLoader(),
+			new Class<?>[] { Instrumentation.class },
+			(proxy, method, args) -> switch (method.getName()) {
+				case "getAllLoadedClasses" -> new Class<?>[] { String.class, MethodRegistry.class, ClassUpgrader.class };
+				case "isModifiableClass" -> Boolean.valueOf(args[0] != String.class);
+				case "retransformClasses" -> {
+					final Class<?>[] classes = (Class<?>[]) args[0];
+					if (classes.length > 1) {
+						throw new IllegalStateException("batch rejected");
+					}
+					if (classes[0] == ClassUpgrader.class) {
+						throw new UnsupportedOperationException("class rejected");
+					}
+					retransformed.addAll(Arrays.asList(classes));
+					yield null;
+				}
+				default -> throw new UnsupportedOperationException(method.getName());
+			});
+		new ClassUpgrader(instrumentation, issues::add).upgrade(Set.of(
+			"java/lang/String",
+			"de/engehausen/inspector/MethodRegistry",
+			"de/engehausen/inspector/ClassUpgrader"));
+		Assertions.assertEquals(List.of(MethodRegistry.class), retransformed);
+		Assertions.assertEquals(1, issues.size());
+		Assertions.assertTrue(issues.get(0).contains(ClassUpgrader.class.getName()));
+	}
+
+	@Test
+	void testAwait() throws InterruptedException {
+		final List<Class<?>> retransformed = new ArrayList<>();
+		final Instrumentation instrumentation = (Instrumentation) Proxy.newProxyInstance(
+			getClass().getClassLoader(),
+			new Class<?>[] { Instrumentation.class },
+			(proxy, method, args) -> switch (method.getName()) {
+				case "getAllLoadedClasses" -> new Class<?>[] { MethodRegistry.class };
+				case "isModifiableClass" -> Boolean.TRUE;
+				case "retransformClasses" -> {
+					synchronized (retransformed) {
+						retransformed.addAll(Arrays.asList((Class<?>[]) args[0]));
+					}
+					yield null;
+				}
+				default -> throw new UnsupportedOperationException(method.getName());
+			});
+		final ClassUpgrader upgrader = new ClassUpgrader(instrumentation, issue -> {});
+		Assertions.assertTrue(upgrader.await(0L));
+		upgrader.request("de/engehausen/inspector/MethodRegistry");
+		Assertions.assertFalse(upgrader.await(10L));
+		upgrader.start();
+		try {
+			Assertions.assertTrue(upgrader.await(10000L));
+			synchronized (retransformed) {
+				Assertions.assertEquals(List.of(MethodRegistry.class), retransformed);
+			}
+		} finally {
+			upgrader.close();
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+package de.engehausen.inspector;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CounterWindowsTest {
+
+	@Test
+	void testRing() {
+		final MethodRegistry registry = new MethodRegistry();
+		final int[] ids = registry.register("a/B", List.of("m()V"));
+		final CounterWindows windows = new CounterWindows(registry, 2, 1000L);
+		windows.tick();
+		registry.increment(ids[0]);
+		windows.tick();
+		registry.increment(ids[0]);
+		registry.increment(ids[0]);
+		// a method registered after the snapshots counts from zero
+		final int late = registry.register("a/B", List.of("n()V"))[0];
+		registry.increment(late);
+		Assertions.assertArrayEquals(new int[] { 1, 3 }, CounterWindows.calls(
+			windows.snapshots(),
+			new int[] { ids[0], late },
+			new int[] { registry.count(ids[0]), registry.count(late) }));
+		windows.tick();
+		final int[][] snapshots = windows.snapshots();
+		Assertions.assertEquals(2, snapshots.length);
+		Assertions.assertEquals(1, CounterWindows.count(snapshots[0], ids[0]));
+		Assertions.assertEquals(0, CounterWindows.count(snapshots[0], late));
+		Assertions.assertArrayEquals(new int[] { 3, 0 }, CounterWindows.calls(
+			snapshots,
+			new int[] { ids[0], late },
+			new int[] { registry.count(ids[0]), registry.count(late) }));
+	}
+
+	@Test
+	void testInvalid() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new CounterWindows(new MethodRegistry(), 0, 1000L));
+	}
+
+}
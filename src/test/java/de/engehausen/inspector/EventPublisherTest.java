@@ -0,0 +1,94 @@
+package de.engehausen.inspector;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+
+class EventPublisherTest {
+
+	private static final String CLASS_USAGE = "de.engehausen.inspector.ClassUsage";
+	private static final String METHOD_USAGE = "de.engehausen.inspector.MethodUsage";
+	private static final String AGENT_STATISTICS = "de.engehausen.inspector.AgentStatistics";
+
+	@Test
+	void testBatches() throws InterruptedException {
+		final MethodRegistry registry = new MethodRegistry();
+		final int[] ids = registry.register("a/B", List.of("hot()V", "warm()V", "cold()V"));
+		registry.register("a/C", List.of("unused()V"));
+		final EventPublisher publisher = new EventPublisher(registry, 2);
+		final Map<String, RecordedEvent> events = new ConcurrentHashMap<>();
+		final CountDownLatch statistics = new CountDownLatch(2);
+		try (final RecordingStream stream = new RecordingStream()) {
+			stream.enable(CLASS_USAGE);
+			stream.enable(METHOD_USAGE);
+			stream.enable(AGENT_STATISTICS);
+			stream.setMaxAge(Duration.ofMinutes(1));
+			stream.onEvent(CLASS_USAGE, event -> events.put(event.getString("className") + event.getLong("totalCalls"), event));
+			stream.onEvent(METHOD_USAGE, event -> events.put(event.getString("method") + event.getLong("calls"), event));
+			stream.onEvent(AGENT_STATISTICS, event -> {
+				events.put(AGENT_STATISTICS + event.getLong("calls"), event);
+				statistics.countDown();
+			});
+			stream.startAsync();
+			registry.add(ids[0], 30);
+			registry.add(ids[1], 20);
+			registry.increment(ids[2]);
+			publisher.publish();
+			registry.add(ids[2], 5);
+			publisher.publish();
+			Assertions.assertTrue(statistics.await(30, TimeUnit.SECONDS), "no statistics received");
+		}
+		Assertions.assertEquals(51L, events.get("a/B51").getLong("calls"));
+		Assertions.assertEquals(5L, events.get("a/B56").getLong("calls"));
+		Assertions.assertFalse(events.keySet().stream().anyMatch(key -> key.startsWith("a/C")), "unused class published");
+		Assertions.assertEquals(1, events.get("hot()V30").getInt("rank"));
+		Assertions.assertEquals(2, events.get("warm()V20").getInt("rank"));
+		Assertions.assertNull(events.get("cold()V1"), "more than the top methods published");
+		Assertions.assertEquals(1, events.get("cold()V5").getInt("rank"));
+		final RecordedEvent first = events.get(AGENT_STATISTICS + "51");
+		Assertions.assertEquals(2, first.getInt("classes"));
+		Assertions.assertEquals(4, first.getInt("methods"));
+		Assertions.assertEquals(1, first.getInt("usedClasses"));
+	}
+
+	@Test
+	void testRegistrationDuringBatch() throws InterruptedException {
+		final MethodRegistry registry = new MethodRegistry() {
+			@Override
+			public synchronized List<ClassEntry> classes() {
+				// a class registered while the batch is running
+				if (!contains("a/Late")) {
+					increment(register("a/Late", List.of("late()V"))[0]);
+				}
+				return super.classes();
+			}
+		};
+		registry.increment(registry.register("a/B", List.of("early()V"))[0]);
+		final EventPublisher publisher = new EventPublisher(registry, 2);
+		final Map<String, RecordedEvent> events = new ConcurrentHashMap<>();
+		final CountDownLatch statistics = new CountDownLatch(2);
+		try (final RecordingStream stream = new RecordingStream()) {
+			stream.enable(CLASS_USAGE);
+			stream.enable(AGENT_STATISTICS);
+			stream.setMaxAge(Duration.ofMinutes(1));
+			stream.onEvent(CLASS_USAGE, event -> events.put(event.getString("className") + event.getLong("totalCalls"), event));
+			stream.onEvent(AGENT_STATISTICS, event -> statistics.countDown());
+			stream.startAsync();
+			publisher.publish();
+			publisher.publish();
+			Assertions.assertTrue(statistics.await(30, TimeUnit.SECONDS), "no statistics received");
+		}
+		Assertions.assertEquals(1L, events.get("a/B1").getLong("calls"));
+		Assertions.assertEquals(1L, events.get("a/Late1").getLong("calls"));
+	}
+
+}
@@ -0,0 +1,70 @@
+package de.engehausen.inspector;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.engehausen.inspector.data.FirstCall;
+
+class FirstCallsTest {
+
+	@Test
+	void testTimeline() throws InterruptedException {
+		final MethodRegistry registry = new MethodRegistry();
+		final int[] ids = registry.register("a/B", IntStream
+			.range(0, MethodRegistry.PAGE_SIZE + 2)
+			.mapToObj(i -> "m%d()V".formatted(Integer.valueOf(i)))
+			.toList());
+		final int last = ids[ids.length - 1];
+		final FirstCalls firstCalls = new FirstCalls();
+		firstCalls.record(last);
+		final long first = firstCalls.time(last);
+		final Thread other = new Thread(() -> {
+			firstCalls.record(ids[0]);
+			firstCalls.record(last);
+		}, "other");
+		other.start();
+		other.join();
+		Assertions.assertEquals(first, firstCalls.time(last));
+		Assertions.assertEquals(Thread.currentThread().getName(), firstCalls.thread(last));
+		Assertions.assertEquals("other", firstCalls.thread(ids[0]));
+		Assertions.assertEquals(0L, firstCalls.time(ids[1]));
+		final List<FirstCall> timeline = firstCalls.timeline(registry);
+		Assertions.assertEquals(2, timeline.size());
+		Assertions.assertEquals("m%d()V".formatted(Integer.valueOf(MethodRegistry.PAGE_SIZE + 1)), timeline.get(0).method());
+		Assertions.assertEquals("m0()V", timeline.get(1).method());
+		Assertions.assertTrue(timeline.get(0).time() <= timeline.get(1).time());
+	}
+
+	@Test
+	void testConcurrentTimeline() throws InterruptedException {
+		final MethodRegistry registry = new MethodRegistry();
+		final int[] ids = registry.register("a/B", IntStream
+			.range(0, 4 * MethodRegistry.PAGE_SIZE)
+			.mapToObj(i -> "m%d()V".formatted(Integer.valueOf(i)))
+			.toList());
+		final FirstCalls firstCalls = new FirstCalls();
+		final List<Thread> threads = IntStream
+			.range(0, 4)
+			.mapToObj(i -> new Thread(() -> {
+				for (final int id : ids) {
+					firstCalls.record(id);
+				}
+			}, "t%d".formatted(Integer.valueOf(i))))
+			.toList();
+		threads.forEach(Thread::start);
+		// the timeline is read while the first calls are recorded
+		for (int i = 0; i < 100; i++) {
+			for (final FirstCall call : firstCalls.timeline(registry)) {
+				Assertions.assertNotNull(call.thread(), call.method());
+			}
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		Assertions.assertEquals(ids.length, firstCalls.timeline(registry).size());
+	}
+
+}
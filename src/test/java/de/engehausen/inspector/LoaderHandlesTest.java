@@ -0,0 +1,57 @@
+package de.engehausen.inspector;
+
+import java.lang.ref.Reference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+class LoaderHandlesTest {
+
+	@Test
+	void testHandles() {
+		final LoaderHandles handles = new LoaderHandles();
+		Assertions.assertEquals(0, handles.handle(null));
+		Assertions.assertEquals(0, handles.handle(ClassLoader.getSystemClassLoader()));
+		final ClassLoader loader = new URLClassLoader("plugin", new URL[0], null);
+		final int handle = handles.handle(loader);
+		Assertions.assertTrue(handle > 0);
+		Assertions.assertEquals(handle, handles.handle(loader));
+		final ClassLoader other = new URLClassLoader(new URL[0], null);
+		final int otherHandle = handles.handle(other);
+		Assertions.assertNotEquals(handle, otherHandle);
+		Assertions.assertEquals("plugin#" + handle, handles.name(handle));
+		Assertions.assertEquals("URLClassLoader#" + otherHandle, handles.name(otherHandle));
+		Assertions.assertEquals(0, handles.dead().length);
+		Assertions.assertEquals(2, handles.live());
+
+		// enqueuing the references stands in for the garbage collection of the loaders
+		handles.references.keySet().forEach(Reference::enqueue);
+		final int[] dead = handles.dead();
+		Arrays.sort(dead);
+		Assertions.assertArrayEquals(new int[] { handle, otherHandle }, dead);
+		Assertions.assertNull(handles.name(handle));
+		Assertions.assertEquals(0, handles.live());
+		Assertions.assertEquals(0, handles.dead().length, "dead loaders reported again");
+	}
+
+	@Test
+	void testCollected() throws InterruptedException {
+		final LoaderHandles handles = new LoaderHandles();
+		final int handle = handles.handle(new URLClassLoader("plugin", new URL[0], null));
+		int dead = 0;
+		for (int i = 0; i < 50 && dead == 0; i++) {
+			System.gc();
+			Thread.sleep(20L);
+			dead = handles.dead().length;
+		}
+		// the collection is only requested, the test does not fail on a VM that does not collect the loader
+		Assumptions.assumeTrue(dead == 1, "loader not collected");
+		Assertions.assertNull(handles.name(handle));
+		Assertions.assertEquals(0, handles.live());
+	}
+
+}
@@ -0,0 +1,119 @@
+package de.engehausen.inspector;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MethodRegistryTest {
+
+	@Test
+	void testIdsAreReused() {
+		final MethodRegistry registry = new MethodRegistry();
+		final int[] first = registry.register("a/B", List.of("m()V", "n()V"));
+		final int[] second = registry.register("a/B", List.of("n()V", "o()V"));
+		Assertions.assertEquals(first[1], second[0]);
+		Assertions.assertEquals(3, registry.size());
+		Assertions.assertTrue(registry.contains("a/B"));
+		Assertions.assertFalse(registry.contains("a/C"));
+		Assertions.assertEquals(3, registry.classes().get(0).ids().length);
+		Assertions.assertEquals(3, registry.entry("a/B").methods().length);
+		Assertions.assertNull(registry.entry("a/C"));
+	}
+
+	@Test
+	void testMemory() {
+		final MethodRegistry registry = new MethodRegistry(2);
+		Assertions.assertEquals(0L, registry.memory());
+		registry.register("a/B", List.of("m()V"));
+		final long first = registry.memory();
+		Assertions.assertTrue(first > 2L * MethodRegistry.PAGE_SIZE * Integer.BYTES);
+		registry.register("a/B", List.of("m()V"));
+		Assertions.assertEquals(first, registry.memory());
+		registry.register("a/B", List.of("n()V"));
+		Assertions.assertTrue(registry.memory() > first);
+	}
+
+	@Test
+	void testCountsAcrossPages() {
+		final MethodRegistry registry = new MethodRegistry();
+		final int[] ids = registry.register("a/B", IntStream
+			.range(0, MethodRegistry.PAGE_SIZE + 2)
+			.mapToObj(i -> "m%d()V".formatted(Integer.valueOf(i)))
+			.toList());
+		final int last = ids[ids.length - 1];
+		registry.increment(last);
+		registry.increment(last);
+		registry.increment(ids[0]);
+		Assertions.assertEquals(2, registry.count(last));
+		Assertions.assertEquals(1, registry.count(ids[0]));
+		Assertions.assertEquals(0, registry.count(ids[1]));
+	}
+
+	@Test
+	void testGroups() {
+		final MethodRegistry registry = new MethodRegistry(3);
+		final int[] ids = registry.register("a/B", List.of("m()V", "n()V"));
+		Assertions.assertEquals(1, registry.increment(ids[0], 2));
+		Assertions.assertEquals(2, registry.increment(ids[0], 2));
+		registry.add(ids[0], 1, 5);
+		registry.increment(ids[1]);
+		Assertions.assertEquals(3, registry.groups());
+		Assertions.assertEquals(7, registry.count(ids[0]));
+		Assertions.assertEquals(0, registry.count(ids[0], 0));
+		Assertions.assertEquals(5, registry.count(ids[0], 1));
+		Assertions.assertEquals(2, registry.count(ids[0], 2));
+		Assertions.assertEquals(1, registry.count(ids[1], 0));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new MethodRegistry(0));
+	}
+
+	@Test
+	void testRestore() {
+		final MethodRegistry original = new MethodRegistry();
+		original.register("a/B", List.of("m()V", "n()V"));
+		original.register("a/C", List.of("o()V"));
+		original.notInstrumented("a/C", List.of("p()V"));
+		final MethodRegistry restored = new MethodRegistry();
+		restored.restore(original.classes());
+		Assertions.assertEquals(3, restored.size());
+		for (int id = 0; id < 3; id++) {
+			Assertions.assertEquals(original.className(id), restored.className(id));
+			Assertions.assertEquals(original.method(id), restored.method(id));
+		}
+		restored.increment(2);
+		Assertions.assertEquals(1, restored.count(2));
+		Assertions.assertEquals(2, restored.register("a/C", List.of("o()V"))[0]);
+		Assertions.assertThrows(IllegalStateException.class, () -> restored.restore(original.classes()));
+	}
+
+	@Test
+	void testLoaders() {
+		final MethodRegistry registry = new MethodRegistry();
+		final int[] shared = registry.register("a/B", List.of("m()V"));
+		final int[] first = registry.register(1, "a/B", List.of("m()V", "n()V"));
+		final int[] second = registry.register(2, "a/B", List.of("m()V"));
+		Assertions.assertNotEquals(shared[0], first[0]);
+		Assertions.assertNotEquals(first[0], second[0]);
+		Assertions.assertEquals(1, registry.entry(1, "a/B").loader());
+		Assertions.assertEquals(3, registry.classes().size());
+		registry.add(first[0], 2);
+		registry.increment(first[1]);
+		registry.add(second[0], 3);
+		final long memory = registry.memory();
+		Assertions.assertEquals(1, registry.retire(1));
+		Assertions.assertEquals(1, registry.retire(2));
+		Assertions.assertEquals(0, registry.retire(3));
+		Assertions.assertNull(registry.entry(1, "a/B"));
+		Assertions.assertNotNull(registry.entry("a/B"));
+		Assertions.assertEquals(1, registry.classes().size());
+		Assertions.assertTrue(registry.memory() < memory);
+		final List<MethodRegistry.RetiredClass> retired = registry.retired();
+		Assertions.assertEquals(1, retired.size());
+		Assertions.assertArrayEquals(new String[] { "m()V", "n()V" }, retired.get(0).methods());
+		Assertions.assertArrayEquals(new int[] { 5, 1 }, retired.get(0).counts());
+		// the counters are kept for the readers of all counters
+		Assertions.assertEquals(2, registry.count(first[0]));
+	}
+
+}
@@ -0,0 +1,118 @@
+package de.engehausen.inspector;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtMethod;
+import javassist.NotFoundException;
+
+class MethodSelectorTest {
+
+	@Test
+	void testDefaultsInstrumentEverything() throws NotFoundException {
+		final Map<String, String> reasons = reasons(new MethodSelector(0, false, false));
+		Assertions.assertNull(reasons.get("getValue()I"));
+		Assertions.assertNull(reasons.get("setValue(I)V"));
+		Assertions.assertNull(reasons.get("compareTo(Ljava/lang/Object;)I"));
+		Assertions.assertEquals(MethodSelector.REASON_ABSTRACT, reasons.get("nothing()V"));
+	}
+
+	@Test
+	void testSkipAccessors() throws NotFoundException {
+		final Map<String, String> reasons = reasons(new MethodSelector(0, false, true));
+		Assertions.assertEquals(MethodSelector.REASON_ACCESSOR, reasons.get("getValue()I"));
+		Assertions.assertEquals(MethodSelector.REASON_ACCESSOR, reasons.get("setValue(I)V"));
+		Assertions.assertEquals(MethodSelector.REASON_ACCESSOR, reasons.get("getName()Ljava/lang/String;"));
+		Assertions.assertEquals(MethodSelector.REASON_ACCESSOR, reasons.get("setName(Ljava/lang/String;)V"));
+		Assertions.assertNull(reasons.get("increment()I"));
+	}
+
+	@Test
+	void testSkipSynthetic() throws NotFoundException {
+		final Map<String, String> reasons = reasons(new MethodSelector(0, true, false));
+		Assertions.assertEquals(MethodSelector.REASON_SYNTHETIC, reasons.get("compareTo(Ljava/lang/Object;)I"));
+		Assertions.assertNull(reasons.get("compareTo(Lde/engehausen/inspector/MethodSelectorTest$Fixture;)I"));
+		Assertions.assertTrue(reasons
+			.entrySet()
+			.stream()
+			.filter(entry -> entry.getKey().startsWith("lambda$"))
+			.allMatch(entry -> MethodSelector.REASON_SYNTHETIC.equals(entry.getValue())));
+	}
+
+	@Test
+	void testMinimumSize() throws NotFoundException {
+		final Map<String, String> reasons = reasons(new MethodSelector(8, false, false));
+		Assertions.assertEquals(MethodSelector.REASON_SIZE, reasons.get("getValue()I"));
+		Assertions.assertNull(reasons.get("increment()I"));
+	}
+
+	@Test
+	void testFilters() throws NotFoundException {
+		final Map<String, String> excluded = reasons(new MethodSelector(0, false, false, List.of("get.+", "compareTo\\(Ljava/lang/Object;\\)I"), null));
+		Assertions.assertEquals(MethodSelector.REASON_FILTERED, excluded.get("getValue()I"));
+		Assertions.assertEquals(MethodSelector.REASON_FILTERED, excluded.get("getName()Ljava/lang/String;"));
+		Assertions.assertEquals(MethodSelector.REASON_FILTERED, excluded.get("compareTo(Ljava/lang/Object;)I"));
+		Assertions.assertNull(excluded.get("compareTo(Lde/engehausen/inspector/MethodSelectorTest$Fixture;)I"));
+		Assertions.assertNull(excluded.get("setValue(I)V"));
+		final Map<String, String> included = reasons(new MethodSelector(0, false, false, null, List.of("(increment|set.+)\\(.*")));
+		Assertions.assertNull(included.get("increment()I"));
+		Assertions.assertNull(included.get("setValue(I)V"));
+		Assertions.assertEquals(MethodSelector.REASON_FILTERED, included.get("getValue()I"));
+		// the filters do not apply to abstract methods
+		Assertions.assertEquals(MethodSelector.REASON_ABSTRACT, included.get("nothing()V"));
+	}
+
+	private Map<String, String> reasons(final MethodSelector selector) throws NotFoundException {
+		final ClassPool pool = new ClassPool(true);
+		pool.insertClassPath(new ClassClassPath(Fixture.class));
+		final Map<String, String> result = new HashMap<>();
+		for (final CtMethod method : pool.get(Fixture.class.getName()).getDeclaredMethods()) {
+			final String reason = selector.skipReason(method);
+			if (reason != null) {
+				result.put(method.getName() + method.getSignature(), reason);
+			}
+		}
+		return result;
+	}
+
+	static abstract class Fixture implements Comparable<Fixture> {
+
+		private static String name;
+		private int value;
+
+		public int getValue() {
+			return value;
+		}
+
+		public void setValue(final int value) {
+			this.value = value;
+		}
+
+		public static String getName() {
+			return name;
+		}
+
+		public static void setName(final String name) {
+			Fixture.name = name;
+		}
+
+		public int increment() {
+			return value++ + ((Supplier<Integer>) () -> Integer.valueOf(value)).get().intValue();
+		}
+
+		@Override
+		public int compareTo(final Fixture other) {
+			return Integer.compare(value, other.value);
+		}
+
+		abstract void nothing();
+	}
+
+}
@@ -0,0 +1,125 @@
+package de.engehausen.inspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.engehausen.inspector.data.ProbeSwitch;
+
+class OverheadGovernorTest {
+
+	@Test
+	void testDegradation() {
+		final MethodRegistry registry = new MethodRegistry();
+		final int[] ids = registry.register("a/B", List.of("hot()V", "cold()V"));
+		final int probe = registry.register("a/C", List.of(MethodRegistry.CLASS_PROBE))[0];
+		final ClassUpgrader upgrader = upgrader(Set.of("a/B"));
+		final OverheadGovernor governor = new OverheadGovernor(registry, upgrader, 100, 4, 1000L);
+		governor.tick(0L);
+		registry.add(ids[0], 500);
+		registry.add(ids[1], 50);
+		registry.add(probe, 500);
+		governor.tick(1000L);
+		Assertions.assertEquals(OverheadGovernor.MODE_SAMPLED, governor.mode(ids[0]));
+		Assertions.assertNull(governor.mode(ids[1]));
+		Assertions.assertNull(governor.mode(probe), "class-level probes are not governed");
+		// the sampled rate is within the budget times the sampling factor
+		registry.add(ids[0], 400);
+		governor.tick(2000L);
+		Assertions.assertEquals(OverheadGovernor.MODE_SAMPLED, governor.mode(ids[0]));
+		registry.add(ids[0], 1000);
+		governor.tick(3000L);
+		Assertions.assertEquals(OverheadGovernor.MODE_REMOVED, governor.mode(ids[0]));
+		final List<ProbeSwitch> switches = governor.switches();
+		Assertions.assertEquals(2, switches.size());
+		Assertions.assertEquals(new ProbeSwitch("a/B", "hot()V", OverheadGovernor.MODE_SAMPLED, 500L, 1000L), switches.get(0));
+		Assertions.assertEquals(1000L, switches.get(1).rate());
+		final List<String> requests = new ArrayList<>();
+		upgrader.requests.drainTo(requests);
+		Assertions.assertEquals(List.of("a/B", "a/B"), requests);
+	}
+
+	@Test
+	void testGeneratedClasses() {
+		final MethodRegistry registry = new MethodRegistry();
+		final int proxied = registry.register("a/Service", List.of("call()V"))[0];
+		final int lambda = registry.register("a/Lambdas", List.of("run()V"))[0];
+		// only the proxy can be retransformed, neither the lambda nor a class of the mapped names is loaded
+		final ClassUpgrader upgrader = upgrader(Set.of("a/Service$$Proxy1"));
+		final Map<String, Set<String>> classNames = Map.of(
+			"a/Service", Set.of("a/Service", "a/Service$$Proxy1"),
+			"a/Lambdas", Set.of("a/Lambdas", "a/Main$$Lambda1"));
+		final OverheadGovernor governor = new OverheadGovernor(registry, upgrader, 100, 4, 1000L, classNames::get);
+		governor.tick(0L);
+		registry.add(proxied, 500);
+		registry.add(lambda, 500);
+		governor.tick(1000L);
+		registry.add(lambda, 500);
+		governor.tick(2000L);
+		Assertions.assertEquals(OverheadGovernor.MODE_SAMPLED, governor.mode(proxied));
+		Assertions.assertNull(governor.mode(lambda), "not switched");
+		Assertions.assertEquals(List.of(
+			new ProbeSwitch("a/Service", "call()V", OverheadGovernor.MODE_SAMPLED, 500L, 1000L),
+			new ProbeSwitch("a/Lambdas", "run()V", OverheadGovernor.MODE_SKIPPED, 500L, 1000L)), governor.switches());
+		final List<String> requests = new ArrayList<>();
+		upgrader.requests.drainTo(requests);
+		Assertions.assertEquals(List.of("a/Service$$Proxy1"), requests);
+	}
+
+	@Test
+	void testSingleLookupPerTick() throws Exception {
+		final MethodRegistry registry = new MethodRegistry();
+		final int[] ids = registry.register("a/B", List.of("first()V", "second()V", "third()V"));
+		final AtomicReference<OverheadGovernor> governor = new AtomicReference<>();
+		final List<Set<String>> lookups = new ArrayList<>();
+		final ClassUpgrader upgrader = new ClassUpgrader(null, issue -> {}) {
+			@Override
+			public Set<String> modifiable(final Set<String> classNames) {
+				lookups.add(classNames);
+				try {
+					// the modes can be read while the loaded classes are looked up
+					Assertions.assertNull(CompletableFuture.supplyAsync(() -> governor.get().mode(ids[0])).get(5, TimeUnit.SECONDS));
+				} catch (InterruptedException|ExecutionException|TimeoutException e) {
+					Assertions.fail(e);
+				}
+				return classNames;
+			}
+		};
+		governor.set(new OverheadGovernor(registry, upgrader, 100, 4, 1000L));
+		governor.get().tick(0L);
+		for (final int id : ids) {
+			registry.add(id, 500);
+		}
+		governor.get().tick(1000L);
+		Assertions.assertEquals(List.of(Set.of("a/B")), lookups);
+		for (final int id : ids) {
+			Assertions.assertEquals(OverheadGovernor.MODE_SAMPLED, governor.get().mode(id));
+		}
+		final List<String> requests = new ArrayList<>();
+		upgrader.requests.drainTo(requests);
+		Assertions.assertEquals(List.of("a/B"), requests);
+	}
+
+	private static ClassUpgrader upgrader(final Set<String> loaded) {
+		return new ClassUpgrader(null, issue -> {}) {
+			@Override
+			public Set<String> modifiable(final Set<String> classNames) {
+				return classNames
+					.stream()
+					.filter(loaded::contains)
+					.collect(Collectors.toSet());
+			}
+		};
+	}
+
+}
@@ -0,0 +1,103 @@
+package de.engehausen.inspector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.engehausen.inspector.data.ClassInfo;
+import de.engehausen.inspector.data.Report;
+import de.engehausen.inspector.data.Reporter;
+import de.engehausen.inspector.data.ReporterChain;
+import de.engehausen.inspector.reporters.FileCorrelator;
+import de.engehausen.inspector.reporters.Identity;
+import de.engehausen.inspector.reporters.Percentile;
+import de.engehausen.inspector.reporters.Threshold;
+
+class ReportPipelineTest {
+
+	@Test
+	void testSharedCorrelation(@TempDir final Path folder) throws IOException {
+		final CountingCorrelator correlator = new CountingCorrelator();
+		final File percentiles = folder.resolve("percentile.json").toFile();
+		final File thresholds = folder.resolve("threshold.json").toFile();
+		final File identity = folder.resolve("identity.json").toFile();
+		final ReportPipeline pipeline = new ReportPipeline(
+			List.of(
+				new ReporterChain(List.of(FileCorrelator.NAME, Percentile.NAME), percentiles.getPath(), null),
+				new ReporterChain(List.of(FileCorrelator.NAME, Threshold.NAME), thresholds.getPath(), Map.of(Threshold.KEY_LIMIT, "0.1")),
+				new ReporterChain(List.of(Identity.NAME), identity.getPath(), null)
+			),
+			Map.of(FileCorrelator.KEY_SOURCE_ROOTS, List.of(System.getProperty("user.dir"))),
+			Map.<String, Reporter<?>>of(
+				FileCorrelator.NAME, correlator,
+				Percentile.NAME, new Percentile(),
+				Threshold.NAME, new Threshold(),
+				Identity.NAME, new Identity()));
+		pipeline.write(new Report(
+			Map.of(
+				className(ReportPipelineTest.class), new ClassInfo(3, Collections.emptyMap()),
+				className(MethodSelectorTest.class), new ClassInfo(1, Collections.emptyMap())
+			),
+			null));
+		// the chains differ in their meta data
+		Assertions.assertEquals(2, correlator.correlations.get());
+		final ObjectMapper mapper = new ObjectMapper();
+		Assertions.assertEquals(2, mapper.readValue(percentiles, List.class).size());
+		Assertions.assertEquals(2, mapper.readValue(thresholds, List.class).size());
+		Assertions.assertEquals(2, mapper.readValue(identity, Report.class).classes().size());
+	}
+
+	@Test
+	void testCorrelationComputedOnce(@TempDir final Path folder) throws IOException {
+		final CountingCorrelator correlator = new CountingCorrelator();
+		final ReportPipeline pipeline = new ReportPipeline(
+			List.of(
+				new ReporterChain(List.of(FileCorrelator.NAME, Percentile.NAME), folder.resolve("a.json").toString(), null),
+				new ReporterChain(List.of(FileCorrelator.NAME, Threshold.NAME), folder.resolve("b.json").toString(), null),
+				new ReporterChain(List.of(FileCorrelator.NAME), folder.resolve("c.json").toString(), null)
+			),
+			Map.of(FileCorrelator.KEY_SOURCE_ROOTS, List.of(System.getProperty("user.dir"))),
+			Map.<String, Reporter<?>>of(
+				FileCorrelator.NAME, correlator,
+				Percentile.NAME, new Percentile(),
+				Threshold.NAME, new Threshold()));
+		pipeline.write(new Report(Map.of(className(ReportPipelineTest.class), new ClassInfo(3, Collections.emptyMap())), null));
+		Assertions.assertEquals(1, correlator.correlations.get());
+		final Report correlated = new ObjectMapper().readValue(folder.resolve("c.json").toFile(), Report.class);
+		// the correlation is only known within the pipeline
+		Assertions.assertTrue(correlated.meta() == null || !correlated.meta().containsKey(FileCorrelator.KEY_CORRELATED));
+	}
+
+	@Test
+	void testUnknownReporter() {
+		Assertions.assertThrows(IllegalStateException.class, () -> new ReportPipeline(
+			List.of(new ReporterChain(List.of("unknown"), null, null)),
+			null));
+	}
+
+	private static class CountingCorrelator extends FileCorrelator {
+
+		private final AtomicInteger correlations = new AtomicInteger();
+
+		@Override
+		public Report transform(final Report report, final Map<String, Object> meta) {
+			correlations.incrementAndGet();
+			return super.transform(report, meta);
+		}
+	}
+
+	private static String className(final Class<?> clz) {
+		return clz.getName().replace('.', '/');
+	}
+
+}
@@ -0,0 +1,50 @@
+package de.engehausen.inspector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.IllegalClassFormatException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.engehausen.example.SplitDemo;
+
+class TransformerTest {
+
+	private static final String PLUGIN = "de/engehausen/example/SplitDemo$Plugin";
+
+	@Test
+	void testMergedLoaders() throws IOException, IllegalClassFormatException {
+		final Transformer transformer = new Transformer("includes=de/engehausen/example/SplitDemo.Plugin:reportIssues=false", null);
+		final byte[] bytes = plugin();
+		try (URLClassLoader first = new URLClassLoader(new URL[0], getClass().getClassLoader());
+			URLClassLoader second = new URLClassLoader(new URL[0], getClass().getClassLoader())) {
+			Assertions.assertNotNull(transformer.transform(null, first, PLUGIN, null, null, bytes));
+			Assertions.assertNotNull(transformer.transform(null, second, PLUGIN, null, null, bytes));
+		}
+		Assertions.assertNotNull(transformer.registry.entry(0, PLUGIN));
+		Assertions.assertEquals(List.of(), transformer.issues, "merging loaders is not an issue");
+	}
+
+	@Test
+	void testSplitLoaders() throws IOException, IllegalClassFormatException {
+		final Transformer transformer = new Transformer("includes=de/engehausen/example/SplitDemo.Plugin:reportIssues=false:loaders=split", null);
+		final byte[] bytes = plugin();
+		try (URLClassLoader loader = new URLClassLoader(new URL[0], getClass().getClassLoader())) {
+			Assertions.assertNotNull(transformer.transform(null, loader, PLUGIN, null, null, bytes));
+			Assertions.assertEquals(List.of(), transformer.issues);
+			Assertions.assertNotNull(transformer.transform(null, loader, PLUGIN, null, null, bytes));
+		}
+		Assertions.assertEquals(List.of("duplicated class " + PLUGIN), transformer.issues);
+	}
+
+	private static byte[] plugin() throws IOException {
+		try (InputStream stream = SplitDemo.class.getResourceAsStream("SplitDemo$Plugin.class")) {
+			return stream.readAllBytes();
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package de.engehausen.inspector.data;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class UsageTableTest {
+
+	@Test
+	void testSortedColumns() {
+		final UsageTable table = new UsageTable.Builder(true)
+			.add("b/C", 3, new String[] { "x()V", "y()V" }, new int[] { 1, 2 }, null)
+			.add("a/B", 5, new String[] { new String("x()V") }, new int[] { 5 }, List.of("get()I"))
+			.build(null);
+		Assertions.assertEquals(2, table.size());
+		Assertions.assertEquals("a/B", table.className(0));
+		Assertions.assertEquals(5, table.total(0));
+		Assertions.assertEquals(1, table.methodStart(1));
+		Assertions.assertEquals(3, table.methodStart(2));
+		Assertions.assertEquals("y()V", table.method(2));
+		Assertions.assertEquals(2, table.count(2));
+		// interned method names
+		Assertions.assertSame(table.method(0), table.method(1));
+		Assertions.assertEquals(1, table.indexOf("b/C"));
+		Assertions.assertTrue(table.indexOf("c/D") < 0);
+	}
+
+	@Test
+	void testReportView() {
+		final UsageTable table = new UsageTable.Builder(true)
+			.add("a/B", 5, new String[] { "x()V" }, new int[] { 5 }, List.of("get()I"))
+			.build(Map.of("key", "value"));
+		final Report report = table.toReport();
+		final ClassInfo info = report.classes().get("a/B");
+		Assertions.assertEquals(5, info.totalCalls());
+		Assertions.assertEquals(5, info.methodCalls().get("x()V").get());
+		Assertions.assertEquals(List.of("get()I"), info.notInstrumented());
+		Assertions.assertNull(report.classes().get("c/D"));
+		Assertions.assertSame(table, UsageTable.of(report));
+		Assertions.assertEquals(1, Map.copyOf(report.classes()).size());
+	}
+
+	@Test
+	void testFromReport() {
+		final UsageTable table = UsageTable.of(new Report(
+			Map.of(
+				"z/Y", new ClassInfo(2, Map.of("m()V", new AtomicInteger(2))),
+				"a/B", new ClassInfo(1, Map.of("n()V", new AtomicInteger(1)))),
+			null));
+		Assertions.assertEquals("a/B", table.className(0));
+		Assertions.assertEquals("n()V", table.method(table.methodStart(0)));
+		Assertions.assertEquals(2, table.count(table.methodStart(1)));
+	}
+
+	@Test
+	void testRename() {
+		final UsageTable table = new UsageTable.Builder(false)
+			.add("a/B", 1, null, null, null)
+			.add("b/C", 2, null, null, null)
+			.add("c/D", 3, null, null, null)
+			.build(null);
+		final UsageTable renamed = table.rename(new String[] { "z", null, "y" }, Map.of());
+		Assertions.assertEquals(2, renamed.size());
+		Assertions.assertEquals("y", renamed.className(0));
+		Assertions.assertEquals(3, renamed.total(0));
+		Assertions.assertNull(renamed.classInfo(0).methodCalls());
+		Assertions.assertEquals(Map.of(), renamed.meta());
+	}
+
+	@Test
+	void testRecent() throws IOException {
+		final UsageTable table = new UsageTable.Builder(true)
+			.add("b/C", 3, new String[] { "x()V" }, new int[] { 3 }, null)
+			.add("a/B", 5, new String[] { "x()V", "y()V" }, new int[] { 1, 4 }, null)
+			.recent(2, new int[] { 0, 2 }, new int[] { 1, 1 })
+			.build(null);
+		Assertions.assertTrue(table.hasRecent());
+		Assertions.assertEquals(2, table.recentTotal(0));
+		Assertions.assertEquals(2, table.recentCount(1));
+		Assertions.assertNull(table.recentWindows(1));
+		Assertions.assertNull(table.classInfo(1).recent());
+		final ObjectMapper mapper = new ObjectMapper();
+		final Report read = mapper.readValue(mapper.writeValueAsString(table.toReport()), Report.class);
+		final RecentUsage recent = read.classes().get("a/B").recent();
+		Assertions.assertEquals(2, recent.totalCalls());
+		Assertions.assertEquals(2, recent.methodCalls().get("y()V").get());
+		Assertions.assertArrayEquals(new int[] { 1, 1 }, recent.windows());
+		final UsageTable renamed = UsageTable.of(read).rename(new String[] { "z", "y" }, null);
+		Assertions.assertEquals(2, renamed.recentTotal(1));
+		Assertions.assertArrayEquals(new int[] { 1, 1 }, renamed.recentWindows(1));
+	}
+
+	@Test
+	void testGroups() throws IOException {
+		final UsageTable table = new UsageTable.Builder(true)
+			.add("b/C", 3, new String[] { "x()V" }, new int[] { 3 }, null)
+			.group("workers", 3, new int[] { 3 })
+			.add("a/B", 5, new String[] { "x()V", "y()V" }, new int[] { 1, 4 }, null)
+			.group("main", 1, new int[] { 1, 0 })
+			.group("workers", 4, new int[] { 0, 4 })
+			.build(null);
+		Assertions.assertArrayEquals(new String[] { "workers", "main" }, table.groups());
+		Assertions.assertEquals(4, table.groupTotal(0, 0));
+		Assertions.assertEquals(0, table.groupTotal(1, 1));
+		Assertions.assertEquals(1, table.groupCount(1, 0));
+		Assertions.assertNull(table.classInfo(1).groups().get("main"));
+		final ObjectMapper mapper = new ObjectMapper();
+		final Report read = mapper.readValue(mapper.writeValueAsString(table.toReport()), Report.class);
+		final ClassInfo workers = read.classes().get("a/B").groups().get("workers");
+		Assertions.assertEquals(4, workers.totalCalls());
+		Assertions.assertEquals(4, workers.methodCalls().get("y()V").get());
+		final UsageTable renamed = UsageTable.of(read).rename(new String[] { "z", "y" }, null);
+		Assertions.assertEquals(1, renamed.classInfo(1).groups().get("main").totalCalls());
+		Assertions.assertEquals(3, renamed.classInfo(0).groups().get("workers").totalCalls());
+	}
+
+}
@@ -0,0 +1,51 @@
+package de.engehausen.inspector.reporters;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.engehausen.inspector.data.Report;
+import de.engehausen.inspector.data.UsageTable;
+import de.engehausen.inspector.reporters.PackageRollup.PackageNode;
+
+class PackageRollupTest {
+
+	private final Report report = new UsageTable.Builder(false)
+		.add("de/a/x/One", 1, null, null, null)
+		.add("de/a/x/Two", 2, null, null, null)
+		.add("de/a/y/Three", 4, null, null, null)
+		.add("de/ab/Four", 8, null, null, null)
+		.add("org/Five", 16, null, null, null)
+		.add("Six", 32, null, null, null)
+		.build(null)
+		.toReport();
+
+	@Test
+	void testHierarchy() {
+		final PackageNode root = new PackageRollup().transform(report, Map.of());
+		Assertions.assertEquals(63, root.totalCalls());
+		Assertions.assertEquals(6, root.classes());
+		final PackageNode de = root.packages().get(0);
+		Assertions.assertEquals(new PackageNode("de/ab", 8, 1, List.of()), de.packages().get(1));
+		final PackageNode a = de.packages().get(0);
+		Assertions.assertEquals("de/a", a.name());
+		Assertions.assertEquals(7, a.totalCalls());
+		Assertions.assertEquals(List.of(
+			new PackageNode("de/a/x", 3, 2, List.of()),
+			new PackageNode("de/a/y", 4, 1, List.of())), a.packages());
+		Assertions.assertEquals(new PackageNode("org", 16, 1, List.of()), root.packages().get(1));
+	}
+
+	@Test
+	void testDepthAndPruning() {
+		final PackageNode root = new PackageRollup().transform(report, Map.of(
+			PackageRollup.KEY_DEPTH, "1",
+			PackageRollup.KEY_MIN_CALLS, Integer.valueOf(16)));
+		Assertions.assertEquals(List.of(new PackageNode("org", 16, 1, List.of())), root.packages());
+		final PackageNode shallow = new PackageRollup().transform(report, Map.of(PackageRollup.KEY_DEPTH, "1"));
+		Assertions.assertEquals(new PackageNode("de", 15, 4, List.of()), shallow.packages().get(0));
+	}
+
+}
@@ -33,4 +33,63 @@ class PercentileTest {
 		System.out.println(result);
 	}
 
+	@Test
+	void testLargeCounts() {
+		var report = new Report(
+			Map.of(
+				FileCorrelatorTest.className(FileCorrelatorTest.class), new ClassInfo(Integer.MAX_VALUE, Collections.emptyMap()),
+				FileCorrelatorTest.className(PercentileTest.class), new ClassInfo(-2, Collections.emptyMap())
+			),
+			Collections.emptyMap()
+		);
+		final List<Weight> result = new Percentile().transform(report, Map.of(FileCorrelator.KEY_SOURCE_ROOTS, List.of(System.getProperty("user.dir"))));
+		final List<Weight> expected = List.of(
+			new Weight("src/test/java/de/engehausen/inspector/reporters/PercentileTest.java", 0.5d),
+			new Weight("src/test/java/de/engehausen/inspector/reporters/FileCorrelatorTest.java", 1d)
+		);
+		Assertions.assertEquals(expected, result);
+	}
+
+	@Test
+	void testLegacyMapper() {
+		var report = new Report(
+			Map.of(
+				FileCorrelatorTest.className(FileCorrelatorTest.class), new ClassInfo(75, Collections.emptyMap()),
+				FileCorrelatorTest.className(PercentileTest.class), new ClassInfo(25, Collections.emptyMap())
+			),
+			Collections.emptyMap()
+		);
+		final AbstractWeightMapper legacy = new AbstractWeightMapper() {
+			@Override
+			public String name() {
+				return "legacy";
+			}
+
+			@Override
+			public List<Weight> report(final List<Weight> weights, final Map<String, Object> meta) {
+				return weights;
+			}
+		};
+		final List<Weight> expected = List.of(
+			new Weight("src/test/java/de/engehausen/inspector/reporters/PercentileTest.java", Integer.valueOf(25)),
+			new Weight("src/test/java/de/engehausen/inspector/reporters/FileCorrelatorTest.java", Integer.valueOf(75))
+		);
+		Assertions.assertEquals(expected, List.copyOf(legacy.transform(report, Map.of(FileCorrelator.KEY_SOURCE_ROOTS, List.of(System.getProperty("user.dir"))))));
+	}
+
+	@Test
+	void testTableMapperAdapter() {
+		final List<Weight> weights = List.of(
+			new Weight("a.java", Integer.valueOf(1)),
+			new Weight("b.java", Integer.valueOf(3)),
+			new Weight("c.java", Integer.valueOf(2))
+		);
+		final List<Weight> expected = List.of(
+			new Weight("a.java", Double.valueOf(0.3333d)),
+			new Weight("c.java", Double.valueOf(0.6667d)),
+			new Weight("b.java", Double.valueOf(1d))
+		);
+		Assertions.assertEquals(expected, List.copyOf(new Percentile().report(weights, Collections.emptyMap())));
+	}
+
 }
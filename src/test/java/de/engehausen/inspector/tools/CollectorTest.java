@@ -0,0 +1,131 @@
+package de.engehausen.inspector.tools;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.engehausen.inspector.CounterPusher;
+import de.engehausen.inspector.MethodRegistry;
+import de.engehausen.inspector.data.UsageTable;
+
+class CollectorTest {
+
+	@Test
+	void testTcp() throws IOException, InterruptedException {
+		final Collector collector = new Collector("0");
+		try {
+			collector.start();
+			final String port = Integer.toString(((InetSocketAddress) collector.address()).getPort());
+			push(port, 3);
+			push(port, 2);
+			final UsageTable table = await(collector, 5);
+			Assertions.assertEquals("a/B", table.className(0));
+			Assertions.assertEquals(5, table.classInfo(0).methodCalls().get("m()V").get());
+			Assertions.assertEquals(0, table.classInfo(0).methodCalls().get("n()V").get());
+		} finally {
+			collector.close();
+		}
+	}
+
+	@Test
+	void testUnixDomainSocket(@TempDir final Path folder) throws IOException, InterruptedException {
+		final String path = folder.resolve("collector.sock").toString();
+		final Collector collector = new Collector(path);
+		try {
+			collector.start();
+			final MethodRegistry registry = new MethodRegistry();
+			final int[] ids = registry.register("a/B", List.of("m()V"));
+			final CounterPusher pusher = new CounterPusher(registry, path);
+			registry.increment(ids[0]);
+			pusher.push();
+			registry.increment(ids[0]);
+			registry.increment(ids[0]);
+			pusher.close();
+			Assertions.assertEquals(3, await(collector, 3).total(0));
+		} finally {
+			collector.close();
+		}
+	}
+
+	@Test
+	void testMissingCollector(@TempDir final Path folder) {
+		final MethodRegistry registry = new MethodRegistry();
+		registry.increment(registry.register("a/B", List.of("m()V"))[0]);
+		final CounterPusher pusher = new CounterPusher(registry, folder.resolve("missing.sock").toString());
+		Assertions.assertDoesNotThrow(pusher::push);
+		Assertions.assertDoesNotThrow(pusher::close);
+	}
+
+	@Test
+	void testTieredClass() throws IOException, InterruptedException {
+		final Collector collector = new Collector("0");
+		try {
+			collector.start();
+			final MethodRegistry registry = new MethodRegistry();
+			// the class-level count holds the calls before the upgrade, as in the agent's report
+			final int[] ids = registry.register("a/B", List.of(MethodRegistry.CLASS_PROBE, "m()V"));
+			registry.increment(ids[0]);
+			registry.add(ids[1], 2);
+			final CounterPusher pusher = new CounterPusher(registry, Integer.toString(((InetSocketAddress) collector.address()).getPort()));
+			pusher.close();
+			final UsageTable table = await(collector, 3);
+			Assertions.assertEquals(3, table.total(0));
+			Assertions.assertEquals(1, table.classInfo(0).methodCalls().get(MethodRegistry.CLASS_PROBE).get());
+		} finally {
+			collector.close();
+		}
+	}
+
+	@Test
+	void testInvalidBatchSize() throws IOException, InterruptedException {
+		final Collector collector = new Collector("0");
+		try {
+			collector.start();
+			try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), ((InetSocketAddress) collector.address()).getPort())) {
+				socket.setSoTimeout(5000);
+				final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+				out.writeInt(CounterPusher.MAGIC);
+				out.writeUTF("bad");
+				out.writeInt(Integer.MAX_VALUE);
+				out.flush();
+				// the collector drops the connection instead of allocating the batch
+				Assertions.assertEquals(-1, socket.getInputStream().read());
+			}
+			push(Integer.toString(((InetSocketAddress) collector.address()).getPort()), 2);
+			Assertions.assertEquals(2, await(collector, 2).total(0));
+		} finally {
+			collector.close();
+		}
+	}
+
+	private void push(final String port, final int calls) {
+		final MethodRegistry registry = new MethodRegistry();
+		final int[] ids = registry.register("a/B", List.of("m()V", "n()V"));
+		for (int i = 0; i < calls; i++) {
+			registry.increment(ids[0]);
+		}
+		final CounterPusher pusher = new CounterPusher(registry, port);
+		pusher.push();
+		pusher.close();
+	}
+
+	private UsageTable await(final Collector collector, final int total) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			final UsageTable table = collector.snapshot(true);
+			if (table.size() > 0 && table.total(0) == total) {
+				return table;
+			}
+			Thread.sleep(50);
+		}
+		return collector.snapshot(true);
+	}
+
+}
@@ -0,0 +1,227 @@
+package de.engehausen.inspector.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.engehausen.inspector.MethodRegistry;
+
+class OfflineInstrumenterTest {
+
+	private static final String CLASS_FILE = "de/engehausen/example/ApplicationDemo.class";
+	private static final String PROBE = "de/engehausen/inspector/Transformer";
+
+	@Test
+	void testInstrumentJarAndDirectory(@TempDir final Path folder) throws IOException {
+		final byte[] original = classFile();
+		final Path jar = folder.resolve("app.jar");
+		try (final JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+			out.putNextEntry(new JarEntry(CLASS_FILE));
+			out.write(original);
+			out.putNextEntry(new JarEntry("META-INF/APP.SF"));
+			out.write("signature".getBytes(StandardCharsets.UTF_8));
+		}
+		final Path classes = folder.resolve("classes");
+		Files.createDirectories(classes.resolve("x"));
+		Files.writeString(classes.resolve("x/readme.txt"), "unchanged");
+		final Path out = folder.resolve("out");
+		final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+		final int code = new Cli().run(
+			new String[] { Cli.COMMAND_INSTRUMENT, "--out", out.toString(), jar.toString(), classes.toString() },
+			new PrintStream(stdout),
+			System.err);
+		Assertions.assertEquals(0, code);
+
+		final List<MethodRegistry.ClassEntry> manifest = new ObjectMapper().readValue(
+			out.resolve(Cli.DEFAULT_MANIFEST).toFile(),
+			new TypeReference<List<MethodRegistry.ClassEntry>>() {});
+		Assertions.assertEquals(1, manifest.size());
+		Assertions.assertEquals("de/engehausen/example/ApplicationDemo", manifest.get(0).name());
+		Assertions.assertTrue(List.of(manifest.get(0).methods()).contains("once()Z"));
+
+		try (final JarFile result = new JarFile(out.resolve("app.jar").toFile())) {
+			Assertions.assertNull(result.getEntry("META-INF/APP.SF"), "signature not removed");
+			try (final InputStream in = result.getInputStream(result.getEntry(CLASS_FILE))) {
+				final String instrumented = new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+				Assertions.assertTrue(instrumented.contains(PROBE), "class not instrumented");
+			}
+		}
+		Assertions.assertEquals("unchanged", Files.readString(out.resolve("classes/x/readme.txt")));
+	}
+
+	@Test
+	void testStoredAndNestedEntries(@TempDir final Path folder) throws IOException {
+		final ByteArrayOutputStream library = new ByteArrayOutputStream();
+		try (final JarOutputStream out = new JarOutputStream(library)) {
+			out.putNextEntry(new JarEntry(CLASS_FILE));
+			out.write(classFile());
+		}
+		final byte[] text = "stored".getBytes(StandardCharsets.UTF_8);
+		final Path jar = folder.resolve("boot.jar");
+		try (final JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+			out.putNextEntry(stored("BOOT-INF/lib/library.jar", library.toByteArray()));
+			out.write(library.toByteArray());
+			out.putNextEntry(stored("BOOT-INF/classpath.idx", text));
+			out.write(text);
+			out.putNextEntry(new JarEntry("BOOT-INF/classes/de/engehausen/example/InliningDemo.class"));
+			try (final InputStream in = getClass().getClassLoader().getResourceAsStream("de/engehausen/example/InliningDemo.class")) {
+				out.write(in.readAllBytes());
+			}
+		}
+		final Path manifest = folder.resolve("manifest.json");
+		final OfflineInstrumenter instrumenter = new OfflineInstrumenter(null, List.of(jar.toString()));
+		instrumenter.instrument(folder.resolve("out").toFile(), manifest.toFile());
+		Assertions.assertEquals(List.of(), instrumenter.issues());
+
+		final List<MethodRegistry.ClassEntry> entries = new ObjectMapper().readValue(
+			manifest.toFile(),
+			new TypeReference<List<MethodRegistry.ClassEntry>>() {});
+		Assertions.assertEquals(
+			Set.of("de/engehausen/example/ApplicationDemo", "de/engehausen/example/InliningDemo"),
+			entries.stream().map(MethodRegistry.ClassEntry::name).collect(Collectors.toSet()));
+
+		try (final JarFile result = new JarFile(folder.resolve("out/boot.jar").toFile())) {
+			final JarEntry stored = result.getJarEntry("BOOT-INF/classpath.idx");
+			Assertions.assertEquals(ZipEntry.STORED, stored.getMethod());
+			try (final InputStream in = result.getInputStream(stored)) {
+				Assertions.assertArrayEquals(text, in.readAllBytes());
+			}
+			final JarEntry nested = result.getJarEntry("BOOT-INF/lib/library.jar");
+			Assertions.assertEquals(ZipEntry.STORED, nested.getMethod());
+			try (final JarInputStream in = new JarInputStream(result.getInputStream(nested))) {
+				Assertions.assertEquals(CLASS_FILE, in.getNextJarEntry().getName());
+				final String instrumented = new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+				Assertions.assertTrue(instrumented.contains(PROBE), "nested class not instrumented");
+			}
+		}
+	}
+
+	@Test
+	void testDeterministicIds(@TempDir final Path folder) throws IOException {
+		final List<String> classFiles = List.of(
+			CLASS_FILE,
+			"de/engehausen/example/AccessorDemo.class",
+			"de/engehausen/example/InliningDemo.class",
+			"de/engehausen/example/TieredDemo.class");
+		final Path jar = folder.resolve("app.jar");
+		try (final JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+			for (final String classFile : classFiles) {
+				out.putNextEntry(new JarEntry(classFile));
+				try (final InputStream in = getClass().getClassLoader().getResourceAsStream(classFile)) {
+					out.write(in.readAllBytes());
+				}
+			}
+		}
+		final Path first = folder.resolve("first.json");
+		final Path second = folder.resolve("second.json");
+		new OfflineInstrumenter(null, List.of(jar.toString())).instrument(folder.resolve("out1").toFile(), first.toFile());
+		new OfflineInstrumenter(null, List.of(jar.toString())).instrument(folder.resolve("out2").toFile(), second.toFile());
+		Assertions.assertEquals(Files.readString(first), Files.readString(second));
+
+		// the ids are assigned in the order of the entries
+		final List<MethodRegistry.ClassEntry> manifest = new ObjectMapper().readValue(
+			first.toFile(),
+			new TypeReference<List<MethodRegistry.ClassEntry>>() {});
+		Assertions.assertEquals(
+			classFiles.stream().map(name -> name.substring(0, name.length() - ".class".length())).toList(),
+			manifest.stream().sorted((a, b) -> Integer.compare(a.ids()[0], b.ids()[0])).map(MethodRegistry.ClassEntry::name).toList());
+	}
+
+	@Test
+	void testGeneratedClasses(@TempDir final Path folder) throws IOException {
+		final Path config = folder.resolve("config.json");
+		Files.writeString(config, """
+			{
+			  "generatedClasses": {
+			    "de/engehausen/example/Skipped.*": "",
+			    "(de/engehausen/example/Application)Demo.*": "$1"
+			  },
+			  "maxGeneratedClasses": 1,
+			  "reportIssues": "false"
+			}
+			""");
+		final OfflineInstrumenter instrumenter = new OfflineInstrumenter("config=" + config, List.of());
+		final byte[] original = classFile();
+		Assertions.assertNotSame(original, instrumenter.instrument("de/engehausen/example/ApplicationDemo", original));
+		Assertions.assertSame(original, instrumenter.instrument("de/engehausen/example/ApplicationDemo$$1", original));
+		Assertions.assertSame(original, instrumenter.instrument("de/engehausen/example/Skipped", original));
+		Assertions.assertTrue(instrumenter.issues().stream().anyMatch(issue -> issue.startsWith("more than 1 generated classes")));
+
+		final Path manifest = folder.resolve("manifest.json");
+		instrumenter.instrument(folder.resolve("out").toFile(), manifest.toFile());
+		final List<MethodRegistry.ClassEntry> entries = new ObjectMapper().readValue(
+			manifest.toFile(),
+			new TypeReference<List<MethodRegistry.ClassEntry>>() {});
+		Assertions.assertEquals(1, entries.size());
+		Assertions.assertEquals("de/engehausen/example/Application", entries.get(0).name());
+	}
+
+	@Test
+	void testBudget(@TempDir final Path folder) throws IOException {
+		final OfflineInstrumenter instrumenter = new OfflineInstrumenter("maxMethods=1:reportIssues=false", List.of());
+		final byte[] ignored;
+		try (final InputStream in = getClass().getClassLoader().getResourceAsStream("de/engehausen/ignored/IgnoreDemo.class")) {
+			ignored = in.readAllBytes();
+		}
+		instrumenter.instrument("de/engehausen/ignored/IgnoreDemo", ignored);
+		final byte[] original = classFile();
+		final byte[] degraded = instrumenter.instrument("de/engehausen/example/ApplicationDemo", original);
+		Assertions.assertNotSame(original, degraded);
+		Assertions.assertTrue(new String(degraded, StandardCharsets.ISO_8859_1).contains(PROBE), "class not instrumented");
+		Assertions.assertTrue(instrumenter.issues().stream().anyMatch(issue -> issue.startsWith("budget used up")));
+
+		final Path manifest = folder.resolve("manifest.json");
+		instrumenter.instrument(folder.resolve("out").toFile(), manifest.toFile());
+		final List<MethodRegistry.ClassEntry> entries = new ObjectMapper().readValue(
+			manifest.toFile(),
+			new TypeReference<List<MethodRegistry.ClassEntry>>() {});
+		final MethodRegistry.ClassEntry entry = entries
+			.stream()
+			.filter(candidate -> candidate.name().equals("de/engehausen/example/ApplicationDemo"))
+			.findFirst()
+			.orElseThrow();
+		Assertions.assertArrayEquals(new String[] { MethodRegistry.CLASS_PROBE }, entry.methods());
+	}
+
+	@Test
+	void testUsage() {
+		Assertions.assertEquals(1, new Cli().run(new String[] { Cli.COMMAND_INSTRUMENT, "app.jar" }, System.out, new PrintStream(new ByteArrayOutputStream())));
+	}
+
+	private static JarEntry stored(final String name, final byte[] contents) {
+		final CRC32 crc = new CRC32();
+		crc.update(contents);
+		final JarEntry result = new JarEntry(name);
+		result.setMethod(ZipEntry.STORED);
+		result.setSize(contents.length);
+		result.setCrc(crc.getValue());
+		return result;
+	}
+
+	private byte[] classFile() throws IOException {
+		try (final InputStream in = getClass().getClassLoader().getResourceAsStream(CLASS_FILE)) {
+			return in.readAllBytes();
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package de.engehausen.inspector.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.engehausen.inspector.data.Change;
+import de.engehausen.inspector.data.ClassInfo;
+import de.engehausen.inspector.data.Report;
+import de.engehausen.inspector.data.UsageTable;
+
+class ReportDiffTest {
+
+	@Test
+	void testDiff(@TempDir final Path folder) throws IOException {
+		final File before = write(folder.resolve("before.json"), Map.of(
+			"a/Cold", info(10, "m()V", 10),
+			"b/Same", info(5, "m()V", 5),
+			"c/Gone", info(3, "m()V", 3)));
+		final File after = write(folder.resolve("after.json"), Map.of(
+			"a/Cold", info(1, "m()V", 1),
+			"b/Same", info(5, "m()V", 5),
+			"d/Hot", info(100, "m()V", 100)));
+		final Report result = run(folder, "diff", before.getPath(), after.getPath());
+		final Map<String, ClassInfo> classes = result.classes();
+		Assertions.assertEquals(List.of("a/Cold", "c/Gone", "d/Hot"), List.copyOf(classes.keySet()));
+		final ClassInfo cold = classes.get("a/Cold");
+		Assertions.assertEquals(-9, cold.totalCalls());
+		Assertions.assertEquals(-9, cold.methodCalls().get("m()V").get());
+		Assertions.assertEquals(-0.9d, cold.change().relative().doubleValue(), 0.0001d);
+		final Change method = cold.change().methodChanges().get("m()V");
+		Assertions.assertEquals(10, method.before());
+		Assertions.assertEquals(1, method.after());
+		Assertions.assertNull(classes.get("d/Hot").change().relative());
+		Assertions.assertEquals(-3, classes.get("c/Gone").totalCalls());
+	}
+
+	@Test
+	void testThresholds(@TempDir final Path folder) throws IOException {
+		final File before = write(folder.resolve("before.json"), Map.of(
+			"a/B", info(100, "m()V", 100),
+			"c/D", info(10, "m()V", 10)));
+		final File after = write(folder.resolve("after.json"), Map.of(
+			"a/B", info(110, "m()V", 110),
+			"c/D", info(15, "m()V", 15)));
+		Assertions.assertEquals(List.of("a/B"), List.copyOf(run(folder, "diff", "--min-absolute", "8", before.getPath(), after.getPath()).classes().keySet()));
+		Assertions.assertEquals(List.of("c/D"), List.copyOf(run(folder, "diff", "--min-relative", "0.2", before.getPath(), after.getPath()).classes().keySet()));
+	}
+
+	@Test
+	void testMergedAndUnsorted(@TempDir final Path folder) throws IOException {
+		final File first = write(folder.resolve("first.json"), Map.of("a/B", info(1, "m()V", 1)));
+		final File second = write(folder.resolve("second.json"), Map.of("a/B", info(2, "n()V", 2)));
+		final Map<String, ClassInfo> unsorted = new LinkedHashMap<>();
+		unsorted.put("z/Y", info(1, "m()V", 1));
+		unsorted.put("a/B", new ClassInfo(3, Map.of("m()V", new AtomicInteger(1), "n()V", new AtomicInteger(2))));
+		final File after = folder.resolve("unsorted.json").toFile();
+		new ObjectMapper().writeValue(after, new Report(unsorted, null));
+		final Report result = run(folder, "diff", first.getPath() + "," + second.getPath(), after.getPath());
+		Assertions.assertEquals(List.of("z/Y"), List.copyOf(result.classes().keySet()));
+		final Report methods = run(folder, "diff", first.getPath(), after.getPath());
+		Assertions.assertEquals(2, methods.classes().get("a/B").totalCalls());
+		Assertions.assertNull(methods.classes().get("a/B").methodCalls().get("m()V"));
+		Assertions.assertEquals(2, methods.classes().get("a/B").methodCalls().get("n()V").get());
+	}
+
+	@Test
+	void testStandardOutputAndMissingValue(@TempDir final Path folder) throws IOException {
+		final File before = write(folder.resolve("before.json"), Map.of("a/B", info(1, "m()V", 1)));
+		final Map<String, ClassInfo> unsorted = new LinkedHashMap<>();
+		unsorted.put("z/Y", info(1, "m()V", 1));
+		unsorted.put("a/B", info(1, "m()V", 1));
+		final File after = folder.resolve("unsorted.json").toFile();
+		new ObjectMapper().writeValue(after, new Report(unsorted, null));
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final ByteArrayOutputStream err = new ByteArrayOutputStream();
+		Assertions.assertEquals(0, new Cli().run(new String[] { "diff", before.getPath(), after.getPath() }, new PrintStream(out), new PrintStream(err)), err::toString);
+		// the output is only the complete result, not the part written before the unsorted class
+		Assertions.assertEquals(List.of("z/Y"), List.copyOf(new ObjectMapper().readValue(out.toByteArray(), Report.class).classes().keySet()));
+		err.reset();
+		Assertions.assertEquals(2, new Cli().run(new String[] { "diff", before.getPath(), after.getPath(), "--out" }, System.out, new PrintStream(err)));
+		Assertions.assertTrue(err.toString().contains("missing value of option --out"), err::toString);
+	}
+
+	private Report run(final Path folder, final String... args) throws IOException {
+		final File out = folder.resolve("diff.json").toFile();
+		final String[] all = new String[args.length + 2];
+		all[0] = args[0];
+		all[1] = "--out";
+		all[2] = out.getPath();
+		System.arraycopy(args, 1, all, 3, args.length - 1);
+		final ByteArrayOutputStream err = new ByteArrayOutputStream();
+		Assertions.assertEquals(0, new Cli().run(all, System.out, new PrintStream(err)), err::toString);
+		return new ObjectMapper().readValue(out, Report.class);
+	}
+
+	private File write(final Path path, final Map<String, ClassInfo> classes) throws IOException {
+		final File file = path.toFile();
+		new ObjectMapper().writeValue(file, UsageTable.of(new Report(classes, null)).toReport());
+		return file;
+	}
+
+	private static ClassInfo info(final int total, final String method, final int count) {
+		return new ClassInfo(total, Map.of(method, new AtomicInteger(count)));
+	}
+
+}